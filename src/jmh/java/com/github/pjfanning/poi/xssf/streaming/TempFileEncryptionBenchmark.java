@@ -0,0 +1,67 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of opening and reading encrypted shared strings tables, with the MVStore password-based
+ * encryption and with raw key encryption. Run with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TempFileEncryptionBenchmark {
+
+    private static final int ENTRY_COUNT = 100_000;
+
+    @Param({"none", "password", "rawKey", "sharedKey"})
+    public String encryption;
+
+    private final TempFileEncryptionKey sharedKey = TempFileEncryptionKey.generate();
+    private TempFileSharedStringsTable table;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        table = newTable();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            table.addSharedStringItem(new XSSFRichTextString("shared string " + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        table.close();
+    }
+
+    @Benchmark
+    public int openAndClose() throws IOException {
+        try (TempFileSharedStringsTable newTable = newTable()) {
+            return newTable.addSharedStringItem(new XSSFRichTextString("text"));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String randomRead() {
+        return table.getItemAt(ThreadLocalRandom.current().nextInt(ENTRY_COUNT)).getString();
+    }
+
+    private TempFileSharedStringsTable newTable() {
+        // a small cache, so that most reads decrypt pages from the temp file
+        MVStoreConfig mvStoreConfig = new MVStoreConfig().cacheSize(1);
+        if ("rawKey".equals(encryption)) {
+            mvStoreConfig.rawKeyEncryption(true);
+        } else if ("sharedKey".equals(encryption)) {
+            mvStoreConfig.encryptionKey(sharedKey);
+        }
+        return new TempFileSharedStringsTable(!"none".equals(encryption), false,
+                new SharedStringsConfig().mvStoreConfig(mvStoreConfig));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scalable Bloom filter of strings. It starts with a filter sized for the expected number of keys; when that
+ * filter is full, a filter with twice the capacity and half the false positive rate is added, so the overall
+ * false positive rate stays below the requested rate however many keys are added. This class is not thread-safe.
+ */
+class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final List<Slice> slices = new ArrayList<>();
+    private final int expectedKeys;
+    private final double falsePositiveRate;
+    private Slice current;
+
+    private static final class Slice {
+        final long[] bits;
+        final long bitCount;
+        final int hashCount;
+        final int capacity;
+        int size;
+
+        Slice(int capacity, double falsePositiveRate) {
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 64));
+            this.bits = new long[(int) ((m + 63) >>> 6)];
+            this.bitCount = (long) bits.length << 6;
+            this.hashCount = Math.max(1, (int) Math.round((double) m / capacity * LN2));
+            this.capacity = capacity;
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * @param expectedKeys the expected number of keys
+     * @param falsePositiveRate the target false positive rate (between 0 and 1)
+     */
+    BloomFilter(int expectedKeys, double falsePositiveRate) {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException("expectedKeys must be positive");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        clear();
+    }
+
+    /**
+     * @return false if the key was definitely not added
+     */
+    boolean mightContain(String key) {
+        long hash = KeyHash.hash(key);
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void put(String key) {
+        if (current.size >= current.capacity) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, current.capacity * 2L);
+            current = new Slice(capacity, falsePositiveRate / Math.pow(2, slices.size() + 1));
+            slices.add(current);
+        }
+        current.put(KeyHash.hash(key));
+    }
+
+    /**
+     * Removes all the keys and shrinks the filter to its initial size.
+     */
+    void clear() {
+        slices.clear();
+        // the first slice gets half the rate, so that the sum over all slices stays below the target rate
+        current = new Slice(expectedKeys, falsePositiveRate / 2);
+        slices.add(current);
+    }
+
+    /**
+     * @return the number of filters that were needed for the keys that were added
+     */
+    int getSliceCount() {
+        return slices.size();
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Shared strings store decorator that keeps an in-heap Bloom filter of the dedup keys. Most lookups of keys
+ * that were never added are answered by the filter, without reading the store; this helps when most of the
+ * added strings are unique. The filter also counts the lookups, so that its false positive rate can be checked.
+ */
+class BloomFilterSharedStringsStore implements SharedStringsStore {
+
+    private final SharedStringsStore store;
+    private final BloomFilter filter;
+    private long lookups;
+    private long skippedLookups;
+    private long falsePositives;
+
+    /**
+     * @param store the store to decorate
+     * @param expectedEntries the expected number of unique entries
+     * @param falsePositiveRate the target false positive rate of the filter
+     */
+    BloomFilterSharedStringsStore(SharedStringsStore store, int expectedEntries, double falsePositiveRate) {
+        this.store = store;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    @Override
+    public Object get(int idx) {
+        return store.get(idx);
+    }
+
+    @Override
+    public void put(int idx, Object entry) {
+        store.put(idx, entry);
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        lookups++;
+        if (!filter.mightContain(key)) {
+            skippedLookups++;
+            return -1;
+        }
+        int idx = store.find(key, entry);
+        if (idx < 0) {
+            falsePositives++;
+        }
+        return idx;
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        filter.put(key);
+        store.add(key, entry, idx);
+    }
+
+    @Override
+    public void putAll(int firstIdx, String[] keys, Object[] entries) {
+        for (String key : keys) {
+            filter.put(key);
+        }
+        store.putAll(firstIdx, keys, entries);
+    }
+
+    @Override
+    public void freeze() {
+        store.freeze();
+    }
+
+    @Override
+    public boolean clear() {
+        if (store.clear()) {
+            filter.clear();
+            lookups = 0;
+            skippedLookups = 0;
+            falsePositives = 0;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * @return the number of dedup lookups
+     */
+    long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the number of dedup lookups that the filter answered without reading the store
+     */
+    long getSkippedLookups() {
+        return skippedLookups;
+    }
+
+    /**
+     * @return the number of dedup lookups where the filter matched but the store had no equal entry
+     */
+    long getFalsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * @return the number of filters that were needed for the keys that were added
+     */
+    int getFilterSliceCount() {
+        return filter.getSliceCount();
+    }
+}
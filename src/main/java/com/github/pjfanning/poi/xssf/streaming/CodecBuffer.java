@@ -0,0 +1,134 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for {@link RichTextCodec}. It writes the same variable-length ints and strings as the
+ * H2 <code>WriteBuffer</code>, so that the codec (and the memory-mapped store that uses it) does not need H2.
+ * The static methods read the values back.
+ */
+final class CodecBuffer {
+
+    private byte[] bytes;
+    private int length;
+
+    CodecBuffer() {
+        this(64);
+    }
+
+    CodecBuffer(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    CodecBuffer put(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    CodecBuffer put(byte[] src) {
+        ensureCapacity(src.length);
+        System.arraycopy(src, 0, bytes, length, src.length);
+        length += src.length;
+        return this;
+    }
+
+    CodecBuffer putVarInt(int x) {
+        return putVarLong(x & 0xffffffffL);
+    }
+
+    CodecBuffer putVarLong(long x) {
+        ensureCapacity(10);
+        while ((x & ~0x7fL) != 0) {
+            bytes[length++] = (byte) (x | 0x80);
+            x >>>= 7;
+        }
+        bytes[length++] = (byte) x;
+        return this;
+    }
+
+    CodecBuffer putDouble(double x) {
+        long bits = Double.doubleToLongBits(x);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte) (bits >>> shift);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the length of the string and its chars, using 1 to 3 bytes per char.
+     */
+    CodecBuffer putString(String s) {
+        int len = s.length();
+        putVarInt(len);
+        ensureCapacity(3 * len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xc0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                bytes[length++] = (byte) (0xe0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the array that holds the written bytes (only the first {@link #length()} bytes are used)
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    static int readVarInt(ByteBuffer buff) {
+        return (int) readVarLong(buff);
+    }
+
+    static long readVarLong(ByteBuffer buff) {
+        long x = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buff.get();
+            x |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return x;
+            }
+        }
+    }
+
+    static String readString(ByteBuffer buff) {
+        int len = readVarInt(buff);
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            int x = buff.get() & 0xff;
+            if (x < 0x80) {
+                chars[i] = (char) x;
+            } else if (x >= 0xe0) {
+                chars[i] = (char) (((x & 0xf) << 12) + ((buff.get() & 0x3f) << 6) + (buff.get() & 0x3f));
+            } else {
+                chars[i] = (char) (((x & 0x1f) << 6) + (buff.get() & 0x3f));
+            }
+        }
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+}
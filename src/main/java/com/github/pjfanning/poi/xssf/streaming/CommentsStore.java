@@ -0,0 +1,72 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Storage engine for the comments and authors of {@link TempFileCommentsTable}.
+ * <p>
+ * Comments are keyed by their cell reference (eg "B20"). Authors are stored with dense ids that are assigned
+ * in increasing order, starting at 0. Implementations are created by a {@link CommentsStoreFactory}.
+ * They do not need to be thread-safe.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public interface CommentsStore extends Closeable {
+
+    /**
+     * @param ref the cell reference
+     * @return the comment or null if there is no comment for this cell
+     */
+    SerializableComment getComment(String ref);
+
+    /**
+     * @param ref the cell reference
+     * @param comment the comment
+     */
+    void putComment(String ref, SerializableComment comment);
+
+    /**
+     * @return the number of comments
+     */
+    int getNumberOfComments();
+
+    /**
+     * @return the cell references of the comments, in ascending order
+     */
+    Iterator<String> getCommentRefs();
+
+    /**
+     * @param authorId the author id
+     * @return the author or null if there is no author with this id
+     */
+    String getAuthor(int authorId);
+
+    /**
+     * @param authorId the author id (the next id after the last one that was stored)
+     * @param author the author (can be null)
+     */
+    void putAuthor(int authorId, String author);
+
+    /**
+     * @return the number of authors
+     */
+    int getNumberOfAuthors();
+
+    /**
+     * Removes all the comments and authors, so that the store can be reused by a {@link CommentsStorePool}. The default
+     * implementation does nothing and returns false, which means that the store cannot be reused.
+     *
+     * @return true if the store was cleared
+     */
+    default boolean clear() {
+        return false;
+    }
+
+    /**
+     * Deletes any temp files. The store cannot be used afterwards.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,40 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Creates the {@link CommentsStore} for a {@link TempFileCommentsTable}. Use one of the static
+ * methods to get the built-in stores or implement this interface to plug in a custom storage engine.
+ *
+ * @since v2.3.0
+ */
+@FunctionalInterface
+public interface CommentsStoreFactory {
+
+    /**
+     * @param encryptTempFiles whether the store should encrypt any temp files that it creates
+     * @return a new, empty store
+     */
+    CommentsStore create(boolean encryptTempFiles);
+
+    /**
+     * @return factory for stores that use a H2 MVStore temp file (the default)
+     */
+    static CommentsStoreFactory mvStore() {
+        return mvStore(new MVStoreConfig());
+    }
+
+    /**
+     * @param mvStoreConfig tuning settings for the MVStore
+     * @return factory for stores that use a H2 MVStore temp file
+     */
+    static CommentsStoreFactory mvStore(MVStoreConfig mvStoreConfig) {
+        return encryptTempFiles -> new MVStoreCommentsStore(encryptTempFiles, mvStoreConfig);
+    }
+
+    /**
+     * @return factory for stores that keep all the comments in heap (like the POI <code>CommentsTable</code>).
+     * This is only useful for small workbooks. <code>encryptTempFiles</code> is ignored, as no temp files are used.
+     */
+    static CommentsStoreFactory inHeap() {
+        return encryptTempFiles -> new InHeapCommentsStore();
+    }
+}
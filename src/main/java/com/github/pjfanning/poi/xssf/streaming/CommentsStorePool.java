@@ -0,0 +1,120 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * A {@link CommentsStoreFactory} that keeps a number of pre-created stores ready, so that creating a
+ * {@link TempFileCommentsTable} does not wait for a temp file and a store to be set up. When a table is
+ * closed, its store is cleared on a background thread and reused; stores that do not support
+ * {@link CommentsStore#clear()} are closed on the background thread and replaced.
+ * <p>
+ * The pool is thread-safe and should be shared by the tables of many workbooks. Close the pool when it is no
+ * longer needed.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public class CommentsStorePool implements CommentsStoreFactory, Closeable {
+
+    private final CommentsStoreFactory storeFactory;
+    private final boolean encryptTempFiles;
+    private final StorePool<CommentsStore> pool;
+
+    /**
+     * @param storeFactory creates the pooled stores
+     * @param encryptTempFiles whether the pooled stores encrypt their temp files; stores that are requested
+     *                         with a different setting are created by <code>storeFactory</code> and not pooled
+     * @param size the number of idle stores to keep ready
+     */
+    public CommentsStorePool(CommentsStoreFactory storeFactory, boolean encryptTempFiles, int size) {
+        this.storeFactory = storeFactory;
+        this.encryptTempFiles = encryptTempFiles;
+        this.pool = new StorePool<>("poi-comments-store-pool", () -> storeFactory.create(encryptTempFiles),
+                CommentsStore::clear, size);
+    }
+
+    @Override
+    public CommentsStore create(boolean encryptTempFiles) {
+        if (encryptTempFiles != this.encryptTempFiles) {
+            return storeFactory.create(encryptTempFiles);
+        }
+        return new PooledStore(pool.acquire(), pool);
+    }
+
+    /**
+     * @return the number of stores that are ready for use
+     */
+    public int getIdleCount() {
+        return pool.getIdleCount();
+    }
+
+    /**
+     * Closes the idle stores and stops the background thread. Stores that are in use are closed when their
+     * tables are closed.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private static final class PooledStore implements CommentsStore {
+
+        private final CommentsStore store;
+        private final StorePool<CommentsStore> pool;
+        private boolean closed;
+
+        PooledStore(CommentsStore store, StorePool<CommentsStore> pool) {
+            this.store = store;
+            this.pool = pool;
+        }
+
+        @Override
+        public SerializableComment getComment(String ref) {
+            return store.getComment(ref);
+        }
+
+        @Override
+        public void putComment(String ref, SerializableComment comment) {
+            store.putComment(ref, comment);
+        }
+
+        @Override
+        public int getNumberOfComments() {
+            return store.getNumberOfComments();
+        }
+
+        @Override
+        public Iterator<String> getCommentRefs() {
+            return store.getCommentRefs();
+        }
+
+        @Override
+        public String getAuthor(int authorId) {
+            return store.getAuthor(authorId);
+        }
+
+        @Override
+        public void putAuthor(int authorId, String author) {
+            store.putAuthor(authorId, author);
+        }
+
+        @Override
+        public int getNumberOfAuthors() {
+            return store.getNumberOfAuthors();
+        }
+
+        @Override
+        public boolean clear() {
+            return store.clear();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pool.release(store);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, direct-mapped cache of entries by index, for reading a frozen table from multiple threads.
+ * Each index maps to one slot, so a new entry simply replaces the entry in its slot.
+ */
+class ConcurrentEntryCache {
+
+    private static final class Slot {
+        final int idx;
+        final Object value;
+
+        Slot(int idx, Object value) {
+            this.idx = idx;
+            this.value = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries the number of slots (rounded up to a power of 2)
+     */
+    ConcurrentEntryCache(int maxEntries) {
+        int size = Integer.highestOneBit(Math.max(1, maxEntries - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    Object get(int idx) {
+        Slot slot = slots.get(idx & mask);
+        if (slot != null && slot.idx == idx) {
+            hits.increment();
+            return slot.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(int idx, Object value) {
+        slots.lazySet(idx & mask, new Slot(idx, value));
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+}
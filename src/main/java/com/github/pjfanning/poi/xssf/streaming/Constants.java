@@ -3,9 +3,9 @@ package com.github.pjfanning.poi.xssf.streaming;
 import org.apache.poi.util.XMLHelper;
 import org.apache.xmlbeans.XmlOptions;
 
-import javax.xml.stream.XMLEventFactory;
+import javax.crypto.Cipher;
 import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLOutputFactory;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Collections;
 
@@ -23,6 +23,18 @@ class Constants {
     }
 
     static final XMLInputFactory XML_INPUT_FACTORY = XMLHelper.newXMLInputFactory();
-    static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLHelper.newXMLOutputFactory();
-    static final XMLEventFactory XML_EVENT_FACTORY = XMLHelper.newXMLEventFactory();
+
+    /**
+     * @return a <code>Cipher</code> per thread, so that temp file data can be encrypted and decrypted concurrently
+     */
+    static ThreadLocal<Cipher> threadLocalCipher(String transformation) throws GeneralSecurityException {
+        Cipher.getInstance(transformation); // fail early if the transformation is not supported
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
 }
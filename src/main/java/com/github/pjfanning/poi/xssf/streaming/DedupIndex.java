@@ -0,0 +1,40 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Index used by <code>TempFileSharedStringsTable</code> to find existing entries when adding shared strings.
+ */
+interface DedupIndex {
+
+    /**
+     * @param key the canonical key of the entry
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     * @return the index of an equal entry, or -1 if there is none
+     */
+    int find(String key, Object entry);
+
+    /**
+     * @param key the canonical key of the entry
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     * @param idx the index of the entry in the shared strings table
+     */
+    void add(String key, Object entry, int idx);
+
+    /**
+     * Adds a batch of entries with consecutive indexes. Implementations can reorder the writes, but when the
+     * same key appears more than once the outcome must be the same as adding the entries one by one.
+     *
+     * @param firstIdx the index of the first entry
+     * @param keys the canonical keys of the entries
+     * @param entries the entries
+     */
+    default void addAll(int firstIdx, String[] keys, Object[] entries) {
+        for (int i = 0; i < entries.length; i++) {
+            add(keys[i], entries[i], firstIdx + i);
+        }
+    }
+
+    /**
+     * Removes all the keys.
+     */
+    void clear();
+}
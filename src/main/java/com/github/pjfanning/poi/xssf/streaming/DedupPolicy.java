@@ -0,0 +1,28 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * How {@link TempFileSharedStringsTable} looks for an existing equal entry when a string is added.
+ * Finding duplicates makes the shared strings part smaller, but when most of the added strings are unique it
+ * mostly costs time and temp file space.
+ *
+ * @see SharedStringsConfig#dedupPolicy(DedupPolicy)
+ * @since v2.3.0
+ */
+public enum DedupPolicy {
+    /**
+     * Every added string gets a new entry. No dedup index is kept, so adding strings is fastest and uses the
+     * least temp file space, but the shared strings part holds a copy of each string.
+     */
+    NONE,
+    /**
+     * Added strings are only compared with a fixed-size, in-heap working set of recently and frequently added
+     * entries (see {@link SharedStringsConfig#dedupWorkingSetSize(int)}). No dedup index is kept in the store.
+     * Strings that repeat close together, or that repeat often, are still shared.
+     */
+    BOUNDED,
+    /**
+     * Added strings are compared with all the entries of the table, using a dedup index in the store.
+     * This is the default.
+     */
+    FULL
+}
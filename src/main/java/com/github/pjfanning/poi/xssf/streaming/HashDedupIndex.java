@@ -0,0 +1,84 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.LongDataType;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Dedup index that maps a 64-bit hash of the canonical key of each entry to its index. The entries are
+ * not stored a second time as keys. Hash collisions are resolved by comparing with the stored entry and
+ * probing the next hash value, so the index never returns an entry that is not equal.
+ */
+class HashDedupIndex implements DedupIndex {
+
+    private final MVMap<Long, Integer> hashes;
+    private final MVMap<Integer, Object> strings;
+    private final Function<Object, String> keyFunction;
+
+    /**
+     * @param mvStore the store to create the index in
+     * @param strings the shared string entries, used to resolve hash collisions
+     * @param keyFunction computes the canonical key of a stored entry
+     */
+    HashDedupIndex(MVStore mvStore, MVMap<Integer, Object> strings, Function<Object, String> keyFunction) {
+        this.hashes = mvStore.openMap("sthash",
+                new MVMap.Builder<Long, Integer>().keyType(LongDataType.INSTANCE));
+        this.strings = strings;
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        long hash = KeyHash.hash(key);
+        Integer idx;
+        while ((idx = hashes.get(hash)) != null) {
+            if (key.equals(keyFunction.apply(strings.get(idx)))) {
+                return idx;
+            }
+            hash++;
+        }
+        return -1;
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        add(key, KeyHash.hash(key), idx);
+    }
+
+    /**
+     * Writes the hashes in sorted order, so that consecutive puts go to the same B-tree pages.
+     */
+    @Override
+    public void addAll(int firstIdx, String[] keys, Object[] entries) {
+        long[] keyHashes = new long[keys.length];
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyHashes[i] = KeyHash.hash(keys[i]);
+            order[i] = i;
+        }
+        // the sort is stable, so duplicated keys are still added in index order
+        Arrays.sort(order, (a, b) -> Long.compare(keyHashes[a], keyHashes[b]));
+        for (int i : order) {
+            add(keys[i], keyHashes[i], firstIdx + i);
+        }
+    }
+
+    @Override
+    public void clear() {
+        hashes.clear();
+    }
+
+    private void add(String key, long hash, int idx) {
+        Integer existing;
+        while ((existing = hashes.putIfAbsent(hash, idx)) != null) {
+            if (key.equals(keyFunction.apply(strings.get(existing)))) {
+                // keep the index of the first copy of a duplicated entry
+                return;
+            }
+            hash++;
+        }
+    }
+}
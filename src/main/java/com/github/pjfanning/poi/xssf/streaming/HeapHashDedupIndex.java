@@ -0,0 +1,83 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * In-heap dedup index that maps a 64-bit hash of the canonical key of each entry to its index, using
+ * primitive arrays with open addressing (12 bytes per slot). Candidates with the same hash are checked
+ * against the stored entries, so the index never returns an entry that is not equal.
+ */
+class HeapHashDedupIndex implements DedupIndex {
+
+    private final IntFunction<Object> entries;
+    private final Function<Object, String> keyFunction;
+    private long[] hashes = new long[1024];
+    // index + 1, so that 0 marks an empty slot
+    private int[] indexes = new int[1024];
+    private int size;
+
+    /**
+     * @param entries looks up the stored entry for an index
+     * @param keyFunction computes the canonical key of a stored entry
+     */
+    HeapHashDedupIndex(IntFunction<Object> entries, Function<Object, String> keyFunction) {
+        this.entries = entries;
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        long hash = KeyHash.hash(key);
+        int mask = indexes.length - 1;
+        for (int slot = (int) hash & mask; indexes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && key.equals(keyFunction.apply(entries.apply(indexes[slot] - 1)))) {
+                return indexes[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        long hash = KeyHash.hash(key);
+        int mask = indexes.length - 1;
+        int slot = (int) hash & mask;
+        for (; indexes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && key.equals(keyFunction.apply(entries.apply(indexes[slot] - 1)))) {
+                // keep the index of the first copy of a duplicated entry
+                return;
+            }
+        }
+        hashes[slot] = hash;
+        indexes[slot] = idx + 1;
+        if (++size > indexes.length / 2) {
+            resize();
+        }
+    }
+
+    @Override
+    public void clear() {
+        hashes = new long[1024];
+        indexes = new int[1024];
+        size = 0;
+    }
+
+    private void resize() {
+        long[] oldHashes = hashes;
+        int[] oldIndexes = indexes;
+        hashes = new long[oldHashes.length * 2];
+        indexes = new int[oldIndexes.length * 2];
+        int mask = indexes.length - 1;
+        for (int i = 0; i < oldIndexes.length; i++) {
+            if (oldIndexes[i] != 0) {
+                int slot = (int) oldHashes[i] & mask;
+                while (indexes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                indexes[slot] = oldIndexes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Comments storage in heap. No temp files are used.
+ */
+class InHeapCommentsStore implements CommentsStore {
+
+    private final TreeMap<String, SerializableComment> comments = new TreeMap<>();
+    private final List<String> authors = new ArrayList<>();
+
+    @Override
+    public SerializableComment getComment(String ref) {
+        return comments.get(ref);
+    }
+
+    @Override
+    public void putComment(String ref, SerializableComment comment) {
+        comments.put(ref, comment);
+    }
+
+    @Override
+    public int getNumberOfComments() {
+        return comments.size();
+    }
+
+    @Override
+    public Iterator<String> getCommentRefs() {
+        return comments.keySet().iterator();
+    }
+
+    @Override
+    public String getAuthor(int authorId) {
+        return authorId >= 0 && authorId < authors.size() ? authors.get(authorId) : null;
+    }
+
+    @Override
+    public void putAuthor(int authorId, String author) {
+        if (authorId == authors.size()) {
+            authors.add(author);
+        } else {
+            authors.set(authorId, author);
+        }
+    }
+
+    @Override
+    public int getNumberOfAuthors() {
+        return authors.size();
+    }
+
+    @Override
+    public boolean clear() {
+        comments.clear();
+        authors.clear();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        comments.clear();
+        authors.clear();
+    }
+}
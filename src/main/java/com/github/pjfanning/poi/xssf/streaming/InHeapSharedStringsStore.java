@@ -0,0 +1,52 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared strings storage in heap. No temp files are used.
+ */
+class InHeapSharedStringsStore implements SharedStringsStore {
+
+    private final List<Object> strings = new ArrayList<>();
+    private final Map<String, Integer> stmap = new HashMap<>();
+
+    @Override
+    public Object get(int idx) {
+        return idx >= 0 && idx < strings.size() ? strings.get(idx) : null;
+    }
+
+    @Override
+    public void put(int idx, Object entry) {
+        if (idx != strings.size()) {
+            throw new IllegalArgumentException("Entries must be added in index order, expected index " + strings.size());
+        }
+        strings.add(entry);
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        Integer idx = stmap.get(key);
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        stmap.putIfAbsent(key, idx);
+    }
+
+    @Override
+    public boolean clear() {
+        strings.clear();
+        stmap.clear();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        strings.clear();
+        stmap.clear();
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * 64-bit hash of the dedup keys, used by the dedup indexes and the Bloom filter. This is kept apart from
+ * {@link HashDedupIndex} so that the stores that do not use H2 can use it without loading H2 classes.
+ */
+final class KeyHash {
+
+    private KeyHash() {}
+
+    /**
+     * 64-bit FNV-1a hash of the chars, followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            h ^= c & 0xff;
+            h *= 0x100000001b3L;
+            h ^= c >>> 8;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
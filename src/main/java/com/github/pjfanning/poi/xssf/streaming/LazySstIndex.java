@@ -0,0 +1,452 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index over the raw XML of a shared strings part. The part is copied once into a temp file and scanned for
+ * the byte offsets of the {@code <si>} elements. The entries are only parsed when they are read, so the
+ * entries that are never used are never parsed. The part must be UTF-8 encoded (as Excel writes it); use
+ * {@link #isUtf8(InputStream)} to check the part first.
+ * <p>
+ * When encryption is enabled, the temp file is encrypted with AES/CTR using a random key that is only held in
+ * memory. The counter is derived from the file offset, so any range of the file can be decrypted.
+ * </p>
+ * <p>
+ * Once the index is built, {@link #get(int, boolean)} can be called from multiple threads.
+ * </p>
+ */
+class LazySstIndex implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DECLARATION_LIMIT = 512;
+    private static final Pattern ENCODING = Pattern.compile("\\sencoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    private File tempFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> cipher;
+    private long[] starts = new long[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private String rootStartTag;
+    private String rootEndTag;
+    private int count = -1;
+    private int uniqueCount = -1;
+
+    // scanner state
+    private InputStream in;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private final byte[] encrypted;
+    private int bufPos;
+    private int bufLen;
+    private long pos;
+    private final ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+    private boolean captureTag;
+
+    /**
+     * Copies the part into a temp file and builds the index.
+     *
+     * @param is the shared strings part
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @throws IOException if an error occurs while reading the part, or if the part is not UTF-8 encoded
+     */
+    LazySstIndex(InputStream is, boolean encryptTempFiles) throws IOException {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        if (!isUtf8(is)) {
+            throw new IOException("Shared strings part is not UTF-8 encoded");
+        }
+        try {
+            if (encryptTempFiles) {
+                byte[] keyBytes = new byte[16];
+                Constants.RANDOM.nextBytes(keyBytes);
+                key = new SecretKeySpec(keyBytes, "AES");
+                cipher = Constants.threadLocalCipher("AES/CTR/NoPadding");
+                encrypted = new byte[BUFFER_SIZE];
+            } else {
+                key = null;
+                cipher = null;
+                encrypted = null;
+            }
+            tempFile = TempFile.createTempFile("poi-shared-strings-part", ".tmp");
+            raf = new RandomAccessFile(tempFile, "rw");
+            channel = raf.getChannel();
+            this.in = is;
+            scan();
+            this.in = null;
+        } catch (Error | RuntimeException | IOException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Checks the byte order mark and the <code>encoding</code> of the XML declaration, without consuming
+     * the stream.
+     *
+     * @param is the shared strings part (must support <code>mark</code>)
+     * @return whether the part is UTF-8 encoded (or US-ASCII, which is a subset of UTF-8)
+     * @throws IOException if an error occurs while reading the part
+     */
+    static boolean isUtf8(InputStream is) throws IOException {
+        byte[] prefix = new byte[DECLARATION_LIMIT];
+        int len = 0;
+        is.mark(DECLARATION_LIMIT);
+        try {
+            int read;
+            while (len < prefix.length && (read = is.read(prefix, len, prefix.length - len)) >= 0) {
+                len += read;
+            }
+        } finally {
+            is.reset();
+        }
+        int start = 0;
+        if (len >= 3 && (prefix[0] & 0xff) == 0xef && (prefix[1] & 0xff) == 0xbb && (prefix[2] & 0xff) == 0xbf) {
+            start = 3;
+        }
+        for (int i = start; i < len; i++) {
+            // UTF-16 and UTF-32 text has zero bytes or a byte order mark, which never occur in UTF-8 XML
+            if (prefix[i] == 0 || (prefix[i] & 0xff) >= 0xfe) {
+                return false;
+            }
+        }
+        String head = new String(prefix, start, len - start, StandardCharsets.ISO_8859_1);
+        if (!head.startsWith("<?xml")) {
+            return true; // no declaration, so the default UTF-8 applies
+        }
+        int end = head.indexOf("?>");
+        Matcher matcher = ENCODING.matcher(end < 0 ? head : head.substring(0, end));
+        if (!matcher.find()) {
+            return true;
+        }
+        String encoding = matcher.group(1).trim();
+        return encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")
+                || encoding.equalsIgnoreCase("US-ASCII") || encoding.equalsIgnoreCase("ASCII");
+    }
+
+    /**
+     * @return the number of {@code <si>} entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the <code>count</code> attribute of the {@code <sst>} element (-1 if missing)
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the <code>uniqueCount</code> attribute of the {@code <sst>} element (-1 if missing)
+     */
+    int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Parses an entry.
+     *
+     * @param idx the index of the entry
+     * @param fullFormat whether to keep the formatting
+     * @return the text of the entry or, if <code>fullFormat</code> is true, its <code>CTRst</code>
+     */
+    Object get(int idx, boolean fullFormat) {
+        if (idx < 0 || idx >= size) {
+            return null;
+        }
+        try {
+            byte[] si = read(starts[idx], lengths[idx]);
+            // the root element is added, so that any namespace prefixes are declared
+            InputStream is = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(rootStartTag.getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayInputStream(si),
+                    new ByteArrayInputStream(rootEndTag.getBytes(StandardCharsets.UTF_8)))));
+            XMLStreamReader xmlStreamReader = Constants.XML_INPUT_FACTORY.createXMLStreamReader(is, "UTF-8");
+            try {
+                xmlStreamReader.nextTag(); // root
+                xmlStreamReader.nextTag(); // si
+                if (fullFormat) {
+                    return TextParser.parseFullCT_Rst(xmlStreamReader);
+                }
+                return TextParser.parseCT_Rst(xmlStreamReader, new StringBuilder());
+            } finally {
+                xmlStreamReader.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException("Failed to parse shared string", e));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (tempFile != null) tempFile.delete();
+    }
+
+    private void scan() throws IOException {
+        long siStart = -1;
+        int c;
+        while ((c = next()) >= 0) {
+            if (c != '<') {
+                continue;
+            }
+            long tagStart = pos - 1;
+            c = next();
+            if (c == '!') {
+                skipDeclaration();
+            } else if (c == '?') {
+                skipUntil('?', '>');
+            } else if (c == '/') {
+                String name = localName(readName(next()));
+                skipUntil('>', -1);
+                if (name.equals("si") && siStart >= 0) {
+                    addEntry(siStart, pos);
+                    siStart = -1;
+                }
+            } else if (c >= 0) {
+                captureTag = rootStartTag == null;
+                tagBytes.reset();
+                tagBytes.write('<');
+                tagBytes.write(c);
+                String qName = readName(c);
+                boolean selfClosing = skipAttributes();
+                captureTag = false;
+                String name = localName(qName);
+                if (rootStartTag == null) {
+                    parseRootTag(tagBytes.toString("UTF-8"), qName, selfClosing);
+                } else if (name.equals("si")) {
+                    if (selfClosing) {
+                        addEntry(tagStart, pos);
+                    } else {
+                        siStart = tagStart;
+                    }
+                }
+            }
+        }
+        if (rootStartTag == null) {
+            throw new IOException("Shared strings part has no root element");
+        }
+    }
+
+    private void parseRootTag(String tag, String qName, boolean selfClosing) {
+        rootStartTag = selfClosing ? tag.substring(0, tag.length() - 2) + ">" : tag;
+        rootEndTag = "</" + qName + ">";
+        count = parseIntAttribute(tag, "count");
+        uniqueCount = parseIntAttribute(tag, "uniqueCount");
+    }
+
+    private static int parseIntAttribute(String tag, String name) {
+        Matcher matcher = Pattern.compile("\\s" + name + "\\s*=\\s*[\"']\\s*(\\d+)").matcher(tag);
+        if (matcher.find()) {
+            try {
+                return Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return -1;
+    }
+
+    private static String localName(String qName) {
+        int idx = qName.indexOf(':');
+        return idx < 0 ? qName : qName.substring(idx + 1);
+    }
+
+    private String readName(int c) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (c >= 0 && c != '>' && c != '/' && !isWhitespace(c)) {
+            sb.append((char) c);
+            c = next();
+        }
+        if (c >= 0) {
+            unread();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Skips to the end of a start tag.
+     *
+     * @return whether the tag is self-closing
+     */
+    private boolean skipAttributes() throws IOException {
+        int quote = -1;
+        int prev = -1;
+        int c;
+        while ((c = next()) >= 0) {
+            if (quote >= 0) {
+                if (c == quote) {
+                    quote = -1;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return prev == '/';
+            }
+            prev = c;
+        }
+        return false;
+    }
+
+    private void skipDeclaration() throws IOException {
+        int c = next();
+        if (c == '-') {
+            next(); // second '-'
+            skipUntil('-', '-', '>');
+        } else if (c == '[') {
+            skipUntil(']', ']', '>'); // CDATA
+        } else {
+            skipUntil('>', -1);
+        }
+    }
+
+    private void skipUntil(int c1, int c2) throws IOException {
+        if (c2 < 0) {
+            int c;
+            while ((c = next()) >= 0 && c != c1) {
+                // skip
+            }
+            return;
+        }
+        skipUntil(-1, c1, c2);
+    }
+
+    private void skipUntil(int c1, int c2, int c3) throws IOException {
+        int p2 = -1;
+        int p1 = -1;
+        int c;
+        while ((c = next()) >= 0) {
+            if (c == c3 && p1 == c2 && (c1 < 0 || p2 == c1)) {
+                return;
+            }
+            p2 = p1;
+            p1 = c;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private void addEntry(long start, long end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        starts[size] = start;
+        lengths[size] = (int) (end - start);
+        size++;
+    }
+
+    private int next() throws IOException {
+        if (bufPos == bufLen) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        pos++;
+        int c = buf[bufPos++] & 0xff;
+        if (captureTag) {
+            tagBytes.write(c);
+        }
+        return c;
+    }
+
+    /**
+     * Steps back one byte. Only called after <code>next()</code> returned a byte from the current buffer.
+     */
+    private void unread() {
+        bufPos--;
+        pos--;
+        if (captureTag) {
+            // the byte is captured again when it is read again
+            byte[] bytes = tagBytes.toByteArray();
+            tagBytes.reset();
+            tagBytes.write(bytes, 0, bytes.length - 1);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int len = in.read(buf);
+        if (len < 0) {
+            return false;
+        }
+        long fileOffset = pos;
+        ByteBuffer bb;
+        if (cipher != null) {
+            crypt(Cipher.ENCRYPT_MODE, fileOffset, buf, 0, encrypted, len);
+            bb = ByteBuffer.wrap(encrypted, 0, len);
+        } else {
+            bb = ByteBuffer.wrap(buf, 0, len);
+        }
+        while (bb.hasRemaining()) {
+            fileOffset += channel.write(bb, fileOffset);
+        }
+        bufPos = 0;
+        bufLen = len;
+        return len > 0 || fill();
+    }
+
+    private byte[] read(long offset, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, offset + bb.position()) < 0) {
+                throw new IOException("Unexpected end of shared strings temp file");
+            }
+        }
+        byte[] data = bb.array();
+        if (cipher != null) {
+            crypt(Cipher.DECRYPT_MODE, offset, data, 0, data, data.length);
+        }
+        return data;
+    }
+
+    /**
+     * Encrypts or decrypts data that starts at <code>offset</code> in the file. The CTR counter is the
+     * offset divided by the 16 byte block size; the key stream is skipped forward to unaligned offsets.
+     */
+    private void crypt(int mode, long offset, byte[] src, int srcOff, byte[] dst, int len) throws IOException {
+        byte[] iv = new byte[16];
+        ByteBuffer.wrap(iv).putLong(8, offset / 16);
+        int skip = (int) (offset % 16);
+        Cipher c = cipher.get();
+        try {
+            c.init(mode, key, new IvParameterSpec(iv));
+            if (skip > 0) {
+                c.update(new byte[skip]);
+            }
+            c.doFinal(src, srcOff, len, dst, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt shared strings temp file data", e);
+        }
+    }
+}
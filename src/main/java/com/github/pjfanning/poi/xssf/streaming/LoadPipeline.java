@@ -0,0 +1,124 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hands over parsed entries in batches to a writer thread, so that parsing (and inflating the zip entry) on
+ * the calling thread overlaps with writing to the store. The batches are written in the order they are added.
+ * The queue is bounded, so the parser blocks when the writer falls behind.
+ */
+class LoadPipeline implements Closeable {
+
+    static final int BATCH_SIZE = 1024;
+    static final int QUEUE_CAPACITY = 4;
+
+    private static final Object[] END = new Object[0];
+    private static final Object[] ABORT = new Object[0];
+
+    private final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile Throwable failure;
+    private Object[] batch = new Object[BATCH_SIZE];
+    private int batchLength;
+
+    /**
+     * @param name the name of the writer thread
+     * @param batchWriter writes a batch of entries, called on the writer thread
+     */
+    LoadPipeline(String name, Consumer<Object[]> batchWriter) {
+        writerThread = new Thread(() -> {
+            try {
+                Object[] next;
+                while ((next = queue.take()) != END && next != ABORT) {
+                    batchWriter.accept(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }, name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @param entry the next entry
+     * @throws IOException if the writer thread failed or this thread was interrupted
+     */
+    void add(Object entry) throws IOException {
+        batch[batchLength++] = entry;
+        if (batchLength == batch.length) {
+            enqueue(batch);
+            batch = new Object[BATCH_SIZE];
+            batchLength = 0;
+        }
+    }
+
+    /**
+     * Waits until all the added entries are written.
+     *
+     * @throws IOException if the writer thread failed or this thread was interrupted
+     */
+    void finish() throws IOException {
+        if (batchLength > 0) {
+            enqueue(Arrays.copyOf(batch, batchLength));
+            batchLength = 0;
+        }
+        enqueue(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared strings to be stored");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the writer thread if {@link #finish()} was not called (eg because parsing failed). The writer thread
+     * is not interrupted, because interrupting a thread that is writing to a <code>FileChannel</code> closes the
+     * channel and breaks the store. Instead, the batches that are still queued are dropped and the writer thread
+     * stops after the batch that it is writing.
+     */
+    @Override
+    public void close() {
+        if (writerThread.isAlive()) {
+            // only this thread adds to the queue, so there is room for the marker after clearing it
+            queue.clear();
+            queue.offer(ABORT);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void enqueue(Object[] next) throws IOException {
+        try {
+            while (!queue.offer(next, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading shared strings");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IOException("Failed to store shared strings", t);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.StringDataType;
+
+import java.io.File;
+import java.util.Iterator;
+
+/**
+ * Comments storage in a H2 MVStore temp file.
+ */
+class MVStoreCommentsStore implements CommentsStore {
+
+    private File tempFile;
+    private String fileName;
+    private MVStore mvStore;
+    private final MVMap<String, SerializableComment> comments;
+    private final MVMap<Integer, String> authors;
+    // a cleared store would rewrite the same sectors with the same raw key and nonce
+    private final boolean reusable;
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param mvStoreConfig tuning settings for the MVStore
+     */
+    MVStoreCommentsStore(boolean encryptTempFiles, MVStoreConfig mvStoreConfig) {
+        reusable = !(encryptTempFiles && mvStoreConfig.isRawKeyEncryption());
+        try {
+            tempFile = mvStoreConfig.createTempFile("poi-comments");
+            fileName = mvStoreConfig.getFileName("poi-comments", tempFile);
+            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
+            if (encryptTempFiles) {
+                fileName = mvStoreConfig.encrypt(mvStoreBuilder, fileName);
+            }
+            mvStoreConfig.applyTo(mvStoreBuilder);
+            mvStoreBuilder.fileName(fileName);
+            mvStore = mvStoreBuilder.open();
+            comments = mvStore.openMap("comments",
+                    new MVMap.Builder<String, SerializableComment>()
+                            .keyType(StringDataType.INSTANCE)
+                            .valueType(SerializableCommentDataType.INSTANCE));
+            authors = mvStore.openMap("authors");
+        } catch (Error | RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public SerializableComment getComment(String ref) {
+        return comments.get(ref);
+    }
+
+    @Override
+    public void putComment(String ref, SerializableComment comment) {
+        comments.put(ref, comment);
+    }
+
+    @Override
+    public int getNumberOfComments() {
+        return comments.size();
+    }
+
+    @Override
+    public Iterator<String> getCommentRefs() {
+        return comments.keyIterator(null);
+    }
+
+    @Override
+    public String getAuthor(int authorId) {
+        return authors.get(authorId);
+    }
+
+    @Override
+    public void putAuthor(int authorId, String author) {
+        authors.put(authorId, author);
+    }
+
+    @Override
+    public int getNumberOfAuthors() {
+        return authors.size();
+    }
+
+    @Override
+    public boolean clear() {
+        if (!reusable) {
+            return false;
+        }
+        comments.clear();
+        authors.clear();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if(mvStore != null) mvStore.closeImmediately();
+        MVStoreConfig.delete(tempFile, fileName);
+    }
+}
@@ -0,0 +1,318 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+import org.h2.mvstore.MVStore;
+import org.h2.store.fs.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Tuning settings for the H2 MVStore temp files used by {@link TempFileSharedStringsTable} and
+ * {@link TempFileCommentsTable}. Settings that are not set keep the MVStore defaults. Pass the config to
+ * {@link SharedStringsConfig#mvStoreConfig(MVStoreConfig)}, {@link SharedStringsStoreFactory#mvStore(boolean, MVStoreConfig)}
+ * or {@link CommentsStoreFactory#mvStore(MVStoreConfig)}.
+ * <p>
+ * The presets are a starting point for common environments:
+ * </p>
+ * <ul>
+ *     <li>{@link #lowMemory()} keeps as little as possible in heap, at the cost of more disk reads</li>
+ *     <li>{@link #fastDisk()} uses a larger cache and writes less often, in bigger chunks</li>
+ *     <li>{@link #smallDisk()} compresses the pages, trading CPU for a much smaller temp file (useful on a
+ *     small tmpfs)</li>
+ * </ul>
+ * <p>
+ * {@link #offHeap(boolean)} keeps the store in LZF-compressed off-heap memory instead of a temp file, for
+ * environments where the file system is read-only or is memory backed anyway.
+ * </p>
+ * <p>
+ * {@link #rawKeyEncryption(boolean)} and {@link #encryptionKey(TempFileEncryptionKey)} make encrypted
+ * stores cheaper to open, which helps when many short-lived tables are created.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public class MVStoreConfig {
+
+    private Integer cacheSizeMB;
+    private int compression = 0;
+    private Integer autoCommitBufferSizeKB;
+    private boolean autoCommitDisabled = false;
+    private Integer pageSplitSize;
+    private boolean offHeap = false;
+    private boolean rawKeyEncryption = false;
+    private TempFileEncryptionKey encryptionKey;
+
+    public MVStoreConfig() {}
+
+    /**
+     * @return settings that keep as little as possible in heap: a 1MB read cache, a 256KB write buffer and
+     * small pages
+     */
+    public static MVStoreConfig lowMemory() {
+        return new MVStoreConfig()
+                .cacheSize(1)
+                .autoCommitBufferSize(256)
+                .pageSplitSize(4 * 1024);
+    }
+
+    /**
+     * @return settings for fast local disks: a 64MB read cache, an 8MB write buffer and large pages
+     */
+    public static MVStoreConfig fastDisk() {
+        return new MVStoreConfig()
+                .cacheSize(64)
+                .autoCommitBufferSize(8 * 1024)
+                .pageSplitSize(64 * 1024);
+    }
+
+    /**
+     * @return settings that minimise the size of the temp file: Deflate compression of the pages and a
+     * 4MB write buffer, so that fewer, larger chunks are written
+     */
+    public static MVStoreConfig smallDisk() {
+        return new MVStoreConfig()
+                .compressHigh()
+                .autoCommitBufferSize(4 * 1024);
+    }
+
+    /**
+     * @param cacheSizeMB the read cache size in MB (MVStore default is 16)
+     * @return this config instance
+     */
+    public MVStoreConfig cacheSize(int cacheSizeMB) {
+        if (cacheSizeMB < 0) {
+            throw new IllegalArgumentException("cacheSizeMB must not be negative");
+        }
+        this.cacheSizeMB = cacheSizeMB;
+        return this;
+    }
+
+    /**
+     * Compresses the pages with LZF. This is fast and usually makes the temp file about half the size.
+     *
+     * @return this config instance
+     */
+    public MVStoreConfig compress() {
+        this.compression = 1;
+        return this;
+    }
+
+    /**
+     * Compresses the pages with Deflate. This is slower than {@link #compress()} but makes the temp file smaller.
+     *
+     * @return this config instance
+     */
+    public MVStoreConfig compressHigh() {
+        this.compression = 2;
+        return this;
+    }
+
+    /**
+     * @param autoCommitBufferSizeKB the size of unsaved changes in KB that triggers a write to the temp file
+     *                               (MVStore default is 1024)
+     * @return this config instance
+     */
+    public MVStoreConfig autoCommitBufferSize(int autoCommitBufferSizeKB) {
+        if (autoCommitBufferSizeKB < 0) {
+            throw new IllegalArgumentException("autoCommitBufferSizeKB must not be negative");
+        }
+        this.autoCommitBufferSizeKB = autoCommitBufferSizeKB;
+        return this;
+    }
+
+    /**
+     * Disables the background writes. The changes are then held in heap until the store is closed, so this is
+     * only useful for tables that are small enough to fit in heap and that should not write to the disk.
+     *
+     * @return this config instance
+     */
+    public MVStoreConfig autoCommitDisabled() {
+        this.autoCommitDisabled = true;
+        return this;
+    }
+
+    /**
+     * @param pageSplitSize the page size in bytes above which pages are split (MVStore default is 16KB);
+     *                      larger pages compress better but make each read more expensive
+     * @return this config instance
+     */
+    public MVStoreConfig pageSplitSize(int pageSplitSize) {
+        if (pageSplitSize < 1) {
+            throw new IllegalArgumentException("pageSplitSize must be positive");
+        }
+        this.pageSplitSize = pageSplitSize;
+        return this;
+    }
+
+    /**
+     * Keeps the store in off-heap memory (the MVStore <code>nioMemLZF:</code> file system) instead of a temp
+     * file. The memory blocks are LZF-compressed, apart from the most recently used ones. No files are created,
+     * so there is no disk I/O and nothing to clean up; the memory is released when the table is closed.
+     * The entries still do not use Java heap, but the direct memory limit of the JVM
+     * (<code>-XX:MaxDirectMemorySize</code>) must be big enough for the compressed store. The default is false.
+     *
+     * @param offHeap whether to keep the store in off-heap memory
+     * @return this config instance
+     */
+    public MVStoreConfig offHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+        return this;
+    }
+
+    /**
+     * Encrypts the temp file (when <code>encryptTempFiles</code> is true) with AES-XTS using a random raw AES key,
+     * instead of the MVStore password-based encryption. This skips the generation of a long random password and
+     * the key derivation when a table is created, and the encryption is cheaper when reading and writing.
+     * The default is false.
+     *
+     * @param rawKeyEncryption whether to encrypt the temp file with a raw AES key
+     * @return this config instance
+     */
+    public MVStoreConfig rawKeyEncryption(boolean rawKeyEncryption) {
+        this.rawKeyEncryption = rawKeyEncryption;
+        return this;
+    }
+
+    /**
+     * Sets the raw AES key for encrypting the temp files (when <code>encryptTempFiles</code> is true). Use the same
+     * key for all the tables of one workbook to avoid generating a key per table; each temp file still gets its
+     * own random nonce in its sector tweaks. This enables {@link #rawKeyEncryption(boolean)}.
+     *
+     * @param encryptionKey the key shared by the stores that use this config (null to generate a key per store)
+     * @return this config instance
+     */
+    public MVStoreConfig encryptionKey(TempFileEncryptionKey encryptionKey) {
+        this.encryptionKey = encryptionKey;
+        if (encryptionKey != null) {
+            this.rawKeyEncryption = true;
+        }
+        return this;
+    }
+
+    /**
+     * @return the read cache size in MB (null if the MVStore default is used)
+     */
+    public Integer getCacheSize() {
+        return cacheSizeMB;
+    }
+
+    /**
+     * @return the compression level: 0 (none), 1 (LZF) or 2 (Deflate)
+     */
+    public int getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the auto commit buffer size in KB (null if the MVStore default is used)
+     */
+    public Integer getAutoCommitBufferSize() {
+        return autoCommitBufferSizeKB;
+    }
+
+    /**
+     * @return whether the background writes are disabled
+     */
+    public boolean isAutoCommitDisabled() {
+        return autoCommitDisabled;
+    }
+
+    /**
+     * @return the page split size in bytes (null if the MVStore default is used)
+     */
+    public Integer getPageSplitSize() {
+        return pageSplitSize;
+    }
+
+    /**
+     * @return whether the store is kept in off-heap memory instead of a temp file
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return whether the temp files are encrypted with a raw AES key
+     */
+    public boolean isRawKeyEncryption() {
+        return rawKeyEncryption;
+    }
+
+    /**
+     * Sets up the encryption of a store.
+     *
+     * @param builder the MVStore builder
+     * @param fileName the file name returned by {@link #getFileName(String, File)}
+     * @return the file name to open the store with
+     */
+    String encrypt(MVStore.Builder builder, String fileName) {
+        if (rawKeyEncryption) {
+            TempFileEncryptionKey key = encryptionKey == null ? TempFileEncryptionKey.generate() : encryptionKey;
+            return XtsEncryptedFilePath.register(fileName, key.getKey());
+        }
+        byte[] bytes = new byte[1024];
+        Constants.RANDOM.nextBytes(bytes);
+        builder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
+        return fileName;
+    }
+
+    /**
+     * @param prefix the prefix of the file name
+     * @return a new temp file, or null when the store is kept in off-heap memory
+     */
+    File createTempFile(String prefix) throws IOException {
+        return offHeap ? null : TempFile.createTempFile(prefix, ".tmp");
+    }
+
+    /**
+     * @param prefix the prefix of the file name
+     * @param tempFile the file returned by {@link #createTempFile(String)}
+     * @return the MVStore file name
+     */
+    String getFileName(String prefix, File tempFile) {
+        if (tempFile == null) {
+            return "nioMemLZF:" + prefix + "-" + UUID.randomUUID() + ".tmp";
+        }
+        return tempFile.getAbsolutePath();
+    }
+
+    /**
+     * Deletes the temp file or releases the off-heap memory of a store.
+     *
+     * @param tempFile the file returned by {@link #createTempFile(String)}
+     * @param fileName the file name returned by {@link #getFileName(String, File)} or
+     *                 {@link #encrypt(MVStore.Builder, String)}
+     */
+    static void delete(File tempFile, String fileName) {
+        if (fileName != null) {
+            fileName = XtsEncryptedFilePath.unregister(fileName);
+        }
+        if (tempFile != null) {
+            tempFile.delete();
+        } else if (fileName != null) {
+            FileUtils.delete(fileName);
+        }
+    }
+
+    void applyTo(MVStore.Builder builder) {
+        if (cacheSizeMB != null) {
+            builder.cacheSize(cacheSizeMB);
+        }
+        if (compression == 1) {
+            builder.compress();
+        } else if (compression == 2) {
+            builder.compressHigh();
+        }
+        if (autoCommitDisabled) {
+            builder.autoCommitDisabled();
+        } else if (autoCommitBufferSizeKB != null) {
+            builder.autoCommitBufferSize(autoCommitBufferSizeKB);
+        }
+        if (pageSplitSize != null) {
+            builder.pageSplitSize(pageSplitSize);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.io.File;
+import java.util.function.Function;
+
+/**
+ * Shared strings storage in a H2 MVStore temp file.
+ */
+class MVStoreSharedStringsStore implements SharedStringsStore {
+
+    private File tempFile;
+    private String fileName;
+    private MVStore mvStore;
+    private final MVMap<Integer, Object> strings;
+    private final DedupIndex dedupIndex;
+    // a cleared store would rewrite the same sectors with the same raw key and nonce
+    private final boolean reusable;
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param hashDedupIndex whether to find duplicates using an index of hashes
+     * @param keyFunction computes the dedup key of a stored entry
+     * @param mvStoreConfig tuning settings for the MVStore
+     */
+    MVStoreSharedStringsStore(boolean encryptTempFiles, boolean hashDedupIndex, Function<Object, String> keyFunction,
+                              MVStoreConfig mvStoreConfig) {
+        reusable = !(encryptTempFiles && mvStoreConfig.isRawKeyEncryption());
+        try {
+            tempFile = mvStoreConfig.createTempFile("poi-shared-strings");
+            fileName = mvStoreConfig.getFileName("poi-shared-strings", tempFile);
+            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
+            if (encryptTempFiles) {
+                fileName = mvStoreConfig.encrypt(mvStoreBuilder, fileName);
+            }
+            mvStoreConfig.applyTo(mvStoreBuilder);
+            mvStoreBuilder.fileName(fileName);
+            mvStore = mvStoreBuilder.open();
+            strings = mvStore.openMap("strings",
+                    new MVMap.Builder<Integer, Object>().valueType(SharedStringDataType.INSTANCE));
+            dedupIndex = hashDedupIndex ?
+                    new HashDedupIndex(mvStore, strings, keyFunction) : new MapDedupIndex(mvStore);
+        } catch (Error | RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object get(int idx) {
+        return strings.get(idx);
+    }
+
+    @Override
+    public void put(int idx, Object entry) {
+        strings.put(idx, entry);
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        return dedupIndex.find(key, entry);
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        dedupIndex.add(key, entry, idx);
+    }
+
+    @Override
+    public void putAll(int firstIdx, String[] keys, Object[] entries) {
+        for (int i = 0; i < entries.length; i++) {
+            strings.put(firstIdx + i, entries[i]);
+        }
+        dedupIndex.addAll(firstIdx, keys, entries);
+    }
+
+    @Override
+    public boolean clear() {
+        if (!reusable) {
+            return false;
+        }
+        strings.clear();
+        dedupIndex.clear();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if(mvStore != null) mvStore.closeImmediately();
+        MVStoreConfig.delete(tempFile, fileName);
+    }
+}
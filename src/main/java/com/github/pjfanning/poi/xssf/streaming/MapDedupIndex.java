@@ -0,0 +1,53 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.StringDataType;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Dedup index that maps the full canonical key of each entry to its index.
+ */
+class MapDedupIndex implements DedupIndex {
+
+    private final MVMap<String, Integer> stmap;
+
+    MapDedupIndex(MVStore mvStore) {
+        stmap = mvStore.openMap("stmap",
+                new MVMap.Builder<String, Integer>().keyType(StringDataType.INSTANCE));
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        Integer idx = stmap.get(key);
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        stmap.put(key, idx);
+    }
+
+    @Override
+    public void clear() {
+        stmap.clear();
+    }
+
+    /**
+     * Writes the keys in sorted order, so that consecutive puts go to the same B-tree pages.
+     */
+    @Override
+    public void addAll(int firstIdx, String[] keys, Object[] entries) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // the sort is stable, so duplicated keys are still written in index order
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        for (int i : order) {
+            stmap.put(keys[i], firstIdx + i);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Shared strings storage in an append-only, memory-mapped temp file. Shared string indexes are dense and
+ * are only ever appended, so the entries are written one after another and an in-heap <code>long[]</code>
+ * holds the file offset of each entry. Reading an entry is a single read from the mapped file.
+ * <p>
+ * Each record is a 4 byte length, a type byte and the entry data (UTF-8 text or <code>RichTextCodec</code>
+ * data). The file is mapped in chunks and records do not cross chunk boundaries, except for records that
+ * are larger than a chunk; those are written and read with positional <code>FileChannel</code> I/O.
+ * When encryption is enabled, records are encrypted with AES/CTR using a random key that is only held in memory.
+ * </p>
+ */
+class MappedLogSharedStringsStore implements SharedStringsStore {
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final byte TYPE_TEXT = 0;
+    private static final byte TYPE_RICH_TEXT = 1;
+
+    private final int chunkSize;
+    private File tempFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long[] offsets = new long[1024];
+    private int size;
+    private long position;
+    private final DedupIndex dedupIndex;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> cipher;
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param keyFunction computes the dedup key of a stored entry
+     */
+    MappedLogSharedStringsStore(boolean encryptTempFiles, Function<Object, String> keyFunction) {
+        this(encryptTempFiles, keyFunction, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedLogSharedStringsStore(boolean encryptTempFiles, Function<Object, String> keyFunction, int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.dedupIndex = new HeapHashDedupIndex(this::get, keyFunction);
+        try {
+            if (encryptTempFiles) {
+                byte[] keyBytes = new byte[16];
+                Constants.RANDOM.nextBytes(keyBytes);
+                key = new SecretKeySpec(keyBytes, "AES");
+                cipher = Constants.threadLocalCipher("AES/CTR/NoPadding");
+            } else {
+                key = null;
+                cipher = null;
+            }
+            tempFile = TempFile.createTempFile("poi-shared-strings", ".tmp");
+            raf = new RandomAccessFile(tempFile, "rw");
+            channel = raf.getChannel();
+        } catch (Error | RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object get(int idx) {
+        if (idx < 0 || idx >= size) {
+            return null;
+        }
+        long offset = offsets[idx];
+        try {
+            int length = readRecordLength(offset);
+            byte[] record = new byte[length];
+            read(offset + 4, record);
+            crypt(Cipher.DECRYPT_MODE, offset + 4, record);
+            if (record[0] == TYPE_TEXT) {
+                return new String(record, 1, length - 1, StandardCharsets.UTF_8);
+            }
+            return RichTextCodec.read(ByteBuffer.wrap(record, 1, length - 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void put(int idx, Object entry) {
+        if (idx != size) {
+            throw new IllegalArgumentException("Entries must be added in index order, expected index " + size);
+        }
+        byte[] record = encode(entry);
+        int recordSize = 4 + record.length;
+        long chunkRemaining = chunkSize - (position % chunkSize);
+        if (recordSize > chunkRemaining && recordSize <= chunkSize) {
+            // start the record in the next chunk, so that it can be read with a single mapped read
+            position += chunkRemaining;
+        }
+        long offset = position;
+        try {
+            crypt(Cipher.ENCRYPT_MODE, offset + 4, record);
+            if (recordSize <= chunkSize) {
+                ByteBuffer chunk = chunk(offset).duplicate();
+                chunk.position((int) (offset % chunkSize));
+                chunk.putInt(record.length);
+                chunk.put(record);
+            } else {
+                ByteBuffer bb = ByteBuffer.allocate(recordSize);
+                bb.putInt(record.length).put(record).flip();
+                long pos = offset;
+                while (bb.hasRemaining()) {
+                    pos += channel.write(bb, pos);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = offset + recordSize;
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = offset;
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        return dedupIndex.find(key, entry);
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        dedupIndex.add(key, entry, idx);
+    }
+
+    /**
+     * Maps all the chunks, so that {@link #get(int)} no longer changes any state.
+     */
+    @Override
+    public void freeze() {
+        try {
+            for (long offset = 0; offset < position; offset += chunkSize) {
+                chunk(offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (tempFile != null && !tempFile.delete()) {
+            // the file can stay locked until the mapped buffers are garbage collected (eg on Windows)
+            tempFile.deleteOnExit();
+        }
+    }
+
+    private static byte[] encode(Object entry) {
+        if (entry instanceof String) {
+            byte[] utf8 = ((String) entry).getBytes(StandardCharsets.UTF_8);
+            byte[] record = new byte[utf8.length + 1];
+            record[0] = TYPE_TEXT;
+            System.arraycopy(utf8, 0, record, 1, utf8.length);
+            return record;
+        }
+        CodecBuffer buff = new CodecBuffer();
+        buff.put(TYPE_RICH_TEXT);
+        RichTextCodec.write(buff, (CTRst) entry);
+        return buff.toByteArray();
+    }
+
+    private int readRecordLength(long offset) throws IOException {
+        int chunkOffset = (int) (offset % chunkSize);
+        if (chunkOffset + 4 <= chunkSize) {
+            return chunk(offset).getInt(chunkOffset);
+        }
+        byte[] length = new byte[4];
+        read(offset, length);
+        return ByteBuffer.wrap(length).getInt();
+    }
+
+    private void read(long offset, byte[] dst) throws IOException {
+        int chunkOffset = (int) (offset % chunkSize);
+        if (chunkOffset + dst.length <= chunkSize) {
+            ByteBuffer chunk = chunk(offset).duplicate();
+            chunk.position(chunkOffset);
+            chunk.get(dst);
+        } else {
+            ByteBuffer bb = ByteBuffer.wrap(dst);
+            long pos = offset;
+            while (bb.hasRemaining()) {
+                int read = channel.read(bb, pos);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of shared strings temp file");
+                }
+                pos += read;
+            }
+        }
+    }
+
+    private MappedByteBuffer chunk(long offset) throws IOException {
+        int chunkIndex = (int) (offset / chunkSize);
+        while (chunks.size() <= chunkIndex) {
+            chunks.add(null);
+        }
+        MappedByteBuffer chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * chunkSize, chunkSize);
+            chunks.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Encrypts or decrypts the data in place. The CTR counter starts at the file offset of the data, so
+     * no two records share a key stream.
+     */
+    private void crypt(int mode, long offset, byte[] data) throws IOException {
+        if (cipher == null) {
+            return;
+        }
+        byte[] iv = new byte[16];
+        ByteBuffer.wrap(iv).putLong(8, offset);
+        Cipher c = cipher.get();
+        try {
+            c.init(mode, key, new IvParameterSpec(iv));
+            c.doFinal(data, 0, data.length, data, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt shared strings temp file data", e);
+        }
+    }
+}
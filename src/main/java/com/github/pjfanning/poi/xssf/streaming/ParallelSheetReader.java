@@ -0,0 +1,321 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads the sheets of a workbook in parallel with <code>XSSFSheetXMLHandler</code>. All the sheets share one
+ * frozen {@link TempFileSharedStringsTable} and each sheet gets its own {@link TempFileCommentsTable}.
+ * <p>
+ * The sheets are parsed on the configured executor (the common <code>ForkJoinPool</code> by default; on
+ * Java 21 and later, <code>Executors.newVirtualThreadPerTaskExecutor()</code> also works well). The
+ * <code>SheetContentsHandler</code> of each sheet is only called from the thread that parses that sheet.
+ * The completion callback is always called on the thread that calls {@link #read(Function)}, either in
+ * sheet order or in the order that the sheets finish. The sheet and comments streams are opened on that thread
+ * too, as each sheet is submitted, and {@link #maxSheetsInFlight(int)} bounds how many are open at once.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public class ParallelSheetReader {
+
+    private final OPCPackage pkg;
+    private Executor executor = ForkJoinPool.commonPool();
+    private boolean encryptTempFiles = false;
+    private boolean fullFormat = false;
+    private boolean formulasNotResults = false;
+    private boolean orderedCompletion = true;
+    private int maxSheetsInFlight = Runtime.getRuntime().availableProcessors();
+    private SharedStringsConfig sharedStringsConfig = new SharedStringsConfig();
+    private CommentsStoreFactory commentsStoreFactory = CommentsStoreFactory.mvStore();
+    private Consumer<SheetInfo> completionCallback = sheet -> {};
+
+    /**
+     * @param pkg the workbook package
+     */
+    public ParallelSheetReader(OPCPackage pkg) {
+        this.pkg = pkg;
+    }
+
+    /**
+     * @param executor the executor that parses the sheets (the caller is responsible for shutting it down)
+     * @return this reader instance
+     */
+    public ParallelSheetReader executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @return this reader instance
+     */
+    public ParallelSheetReader encryptTempFiles(boolean encryptTempFiles) {
+        this.encryptTempFiles = encryptTempFiles;
+        return this;
+    }
+
+    /**
+     * @param fullFormat whether to keep the formatting of the shared strings and comments (default is false)
+     * @return this reader instance
+     */
+    public ParallelSheetReader fullFormat(boolean fullFormat) {
+        this.fullFormat = fullFormat;
+        return this;
+    }
+
+    /**
+     * @param formulasNotResults whether to output the formulas of formula cells instead of their results
+     * @return this reader instance
+     */
+    public ParallelSheetReader formulasNotResults(boolean formulasNotResults) {
+        this.formulasNotResults = formulasNotResults;
+        return this;
+    }
+
+    /**
+     * @param orderedCompletion whether the completion callback is called in sheet order (the default) or in
+     *                          the order that the sheets finish
+     * @return this reader instance
+     */
+    public ParallelSheetReader orderedCompletion(boolean orderedCompletion) {
+        this.orderedCompletion = orderedCompletion;
+        return this;
+    }
+
+    /**
+     * Limits how many sheets are parsed or waiting for their completion callback at once. The streams of a sheet
+     * are only opened when it is submitted to the executor, so this also bounds the number of open streams.
+     *
+     * @param maxSheetsInFlight the maximum number of sheets in flight (default is the number of processors)
+     * @return this reader instance
+     */
+    public ParallelSheetReader maxSheetsInFlight(int maxSheetsInFlight) {
+        if (maxSheetsInFlight < 1) {
+            throw new IllegalArgumentException("maxSheetsInFlight must be positive");
+        }
+        this.maxSheetsInFlight = maxSheetsInFlight;
+        return this;
+    }
+
+    /**
+     * @param completionCallback called when a sheet has been read, on the thread that calls <code>read</code>
+     * @return this reader instance
+     */
+    public ParallelSheetReader onSheetComplete(Consumer<SheetInfo> completionCallback) {
+        this.completionCallback = completionCallback;
+        return this;
+    }
+
+    /**
+     * @param sharedStringsConfig settings for the shared strings table
+     * @return this reader instance
+     */
+    public ParallelSheetReader sharedStringsConfig(SharedStringsConfig sharedStringsConfig) {
+        this.sharedStringsConfig = sharedStringsConfig;
+        return this;
+    }
+
+    /**
+     * @param commentsStoreFactory creates the storage engine of the comments table of each sheet
+     * @return this reader instance
+     */
+    public ParallelSheetReader commentsStoreFactory(CommentsStoreFactory commentsStoreFactory) {
+        this.commentsStoreFactory = commentsStoreFactory;
+        return this;
+    }
+
+    /**
+     * Reads all the sheets and waits until they are done. If a sheet fails, the sheets that have not
+     * started yet are skipped and the first failure is thrown.
+     *
+     * @param handlerFactory creates the handler for each sheet
+     * @throws IOException if a sheet cannot be read
+     * @throws SAXException if a sheet cannot be parsed
+     */
+    public void read(Function<SheetInfo, SheetContentsHandler> handlerFactory) throws IOException, SAXException {
+        try (TempFileSharedStringsTable strings = new TempFileSharedStringsTable(
+                pkg, encryptTempFiles, fullFormat, sharedStringsConfig)) {
+            strings.freeze();
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            StylesTable styles = xssfReader.getStylesTable();
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            List<CompletableFuture<SheetInfo>> futures = new ArrayList<>();
+            BlockingQueue<CompletableFuture<SheetInfo>> completed = new LinkedBlockingQueue<>();
+            // set when a sheet fails, so that the sheets that have not started yet only close their streams
+            AtomicBoolean skip = new AtomicBoolean();
+            AtomicReference<CompletableFuture<SheetInfo>> firstFailure = new AtomicReference<>();
+            int delivered = 0;
+            try {
+                while (iter.hasNext()) {
+                    if (futures.size() - delivered >= maxSheetsInFlight) {
+                        completeNext(futures, completed, firstFailure, delivered++);
+                    }
+                    // the package is not thread-safe, so the streams are opened on this thread
+                    InputStream sheetStream = iter.next();
+                    SheetInfo sheet = new SheetInfo(futures.size(), iter.getSheetName());
+                    InputStream commentsStream = null;
+                    CompletableFuture<SheetInfo> future;
+                    try {
+                        PackagePart commentsPart = findCommentsPart(iter.getSheetPart());
+                        if (commentsPart != null) {
+                            commentsStream = commentsPart.getInputStream();
+                        }
+                        InputStream sheetCommentsStream = commentsStream;
+                        future = CompletableFuture.supplyAsync(() -> {
+                            readSheet(sheet, sheetStream, sheetCommentsStream, styles, strings, handlerFactory, skip);
+                            return sheet;
+                        }, executor);
+                    } catch (IOException | InvalidFormatException | RuntimeException e) {
+                        closeQuietly(commentsStream);
+                        closeQuietly(sheetStream);
+                        throw e;
+                    }
+                    future.whenComplete((s, t) -> {
+                        if (t != null) {
+                            // skipped sheets only complete after this is set, so they are never the first failure
+                            firstFailure.compareAndSet(null, future);
+                            skip.set(true);
+                        }
+                        completed.add(future);
+                    });
+                    futures.add(future);
+                }
+                while (delivered < futures.size()) {
+                    completeNext(futures, completed, firstFailure, delivered++);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading sheets", e);
+            } finally {
+                skip.set(true);
+                // wait for any sheets that are still being parsed, before the shared strings are closed
+                for (CompletableFuture<SheetInfo> future : futures) {
+                    try {
+                        future.join();
+                    } catch (CompletionException e) {
+                        // already reported, or a later failure of a sheet that was still being parsed
+                    }
+                }
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Failed to read workbook", e);
+        }
+    }
+
+    private void completeNext(List<CompletableFuture<SheetInfo>> futures,
+                              BlockingQueue<CompletableFuture<SheetInfo>> completed,
+                              AtomicReference<CompletableFuture<SheetInfo>> firstFailure, int index)
+            throws IOException, SAXException, InterruptedException {
+        CompletableFuture<SheetInfo> future = orderedCompletion ? futures.get(index) : completed.take();
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // report the first failure rather than a sheet that was skipped because of it
+            CompletableFuture<SheetInfo> failure = firstFailure.get();
+            if (failure != null) {
+                future = failure;
+            }
+        }
+        completionCallback.accept(getResult(future));
+    }
+
+    private PackagePart findCommentsPart(PackagePart sheetPart) throws InvalidFormatException {
+        for (PackageRelationship rel : sheetPart.getRelationshipsByType(XSSFRelation.SHEET_COMMENTS.getRelation())) {
+            return pkg.getPart(PackagingURIHelper.createPartName(rel.getTargetURI()));
+        }
+        return null;
+    }
+
+    private void readSheet(SheetInfo sheet, InputStream sheetStream, InputStream commentsStream, StylesTable styles,
+                           TempFileSharedStringsTable strings,
+                           Function<SheetInfo, SheetContentsHandler> handlerFactory, AtomicBoolean skip) {
+        try (InputStream stream = sheetStream; InputStream commentsIn = commentsStream) {
+            if (skip.get()) {
+                throw new CancellationException("Sheet " + sheet.getIndex() + " was skipped");
+            }
+            parseSheet(sheet, stream, commentsIn, styles, strings, handlerFactory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void parseSheet(SheetInfo sheet, InputStream stream, InputStream commentsStream, StylesTable styles,
+                            TempFileSharedStringsTable strings,
+                            Function<SheetInfo, SheetContentsHandler> handlerFactory) throws IOException {
+        try (TempFileCommentsTable comments = new TempFileCommentsTable(
+                encryptTempFiles, fullFormat, commentsStoreFactory)) {
+            if (commentsStream != null) {
+                comments.readFrom(commentsStream);
+            }
+            XMLReader sheetParser = XMLHelper.newXMLReader();
+            sheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                    styles, comments, strings, handlerFactory.apply(sheet), new DataFormatter(), formulasNotResults));
+            sheetParser.parse(new InputSource(stream));
+        } catch (SAXException e) {
+            throw new CompletionException(e);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("SAX parser appears to be broken - " + e.getMessage(), e);
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // the original failure is reported
+            }
+        }
+    }
+
+    private static SheetInfo getResult(CompletableFuture<SheetInfo> future) throws IOException, SAXException,
+            InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.xmlbeans.XmlAnySimpleType;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.officeDocument.x2006.sharedTypes.STVerticalAlignRun;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.*;
+
+import javax.xml.namespace.QName;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary encoding of {@code CT_Rst} rich text (text, formatting runs and phonetic data).
+ * This is used instead of Java serialization when storing rich text in MVStore maps and in the memory-mapped
+ * store. It only writes to a {@link CodecBuffer}, so it does not need H2.
+ */
+class RichTextCodec {
+
+    private static final QName XML_SPACE = new QName("http://www.w3.org/XML/1998/namespace", "space");
+    private static final QName PHONETIC_TYPE = new QName("type");
+    private static final QName PHONETIC_ALIGNMENT = new QName("alignment");
+
+    private static final int FLAG_T = 1;
+    private static final int FLAG_PHONETIC_PR = 2;
+
+    // run flags (a run or phonetic run without a t element is allowed by lenient parsers and by the API)
+    private static final int RUN_RPR = 1;
+    private static final int RUN_T = 2;
+
+    // run property codes
+    private static final int PR_RFONT = 1;
+    private static final int PR_CHARSET = 2;
+    private static final int PR_FAMILY = 3;
+    private static final int PR_B = 4;
+    private static final int PR_I = 5;
+    private static final int PR_STRIKE = 6;
+    private static final int PR_OUTLINE = 7;
+    private static final int PR_SHADOW = 8;
+    private static final int PR_CONDENSE = 9;
+    private static final int PR_EXTEND = 10;
+    private static final int PR_COLOR = 11;
+    private static final int PR_SZ = 12;
+    private static final int PR_U = 13;
+    private static final int PR_VERT_ALIGN = 14;
+    private static final int PR_SCHEME = 15;
+
+    private static final byte BOOLEAN_UNSET = 0;
+    private static final byte BOOLEAN_FALSE = 1;
+    private static final byte BOOLEAN_TRUE = 2;
+
+    private static final int COLOR_AUTO = 1;
+    private static final int COLOR_INDEXED = 2;
+    private static final int COLOR_RGB = 4;
+    private static final int COLOR_THEME = 8;
+    private static final int COLOR_TINT = 16;
+
+    private RichTextCodec() {}
+
+    static void write(CodecBuffer buff, CTRst st) {
+        int flags = (st.isSetT() ? FLAG_T : 0) | (st.isSetPhoneticPr() ? FLAG_PHONETIC_PR : 0);
+        buff.put((byte) flags);
+        if (st.isSetT()) {
+            writeString(buff, st.getT());
+        }
+        CTRElt[] runs = st.getRArray();
+        buff.putVarInt(runs.length);
+        for (CTRElt run : runs) {
+            String t = run.getT();
+            buff.put((byte) ((run.isSetRPr() ? RUN_RPR : 0) | (t != null ? RUN_T : 0)));
+            if (t != null) {
+                writeString(buff, t);
+            }
+            if (run.isSetRPr()) {
+                writeRunProperties(buff, run.getRPr());
+            }
+        }
+        CTPhoneticRun[] phoneticRuns = st.getRPhArray();
+        buff.putVarInt(phoneticRuns.length);
+        for (CTPhoneticRun phoneticRun : phoneticRuns) {
+            buff.putVarLong(phoneticRun.getSb());
+            buff.putVarLong(phoneticRun.getEb());
+            String t = phoneticRun.getT();
+            buff.put((byte) (t != null ? RUN_T : 0));
+            if (t != null) {
+                writeString(buff, t);
+            }
+        }
+        if (st.isSetPhoneticPr()) {
+            CTPhoneticPr pr = st.getPhoneticPr();
+            buff.putVarLong(pr.getFontId());
+            // the alignment enum is not in poi-ooxml-lite, so the attributes are stored as text
+            writeAttribute(buff, pr, PHONETIC_TYPE);
+            writeAttribute(buff, pr, PHONETIC_ALIGNMENT);
+        }
+    }
+
+    static CTRst read(ByteBuffer buff) {
+        CTRst st = CTRst.Factory.newInstance();
+        int flags = buff.get();
+        if ((flags & FLAG_T) != 0) {
+            st.setT(CodecBuffer.readString(buff));
+            preserveSpaces(st.xgetT());
+        }
+        int runCount = CodecBuffer.readVarInt(buff);
+        for (int i = 0; i < runCount; i++) {
+            CTRElt run = st.addNewR();
+            int runFlags = buff.get();
+            if ((runFlags & RUN_T) != 0) {
+                run.setT(CodecBuffer.readString(buff));
+                preserveSpaces(run.xgetT());
+            }
+            if ((runFlags & RUN_RPR) != 0) {
+                readRunProperties(buff, run.addNewRPr());
+            }
+        }
+        int phoneticRunCount = CodecBuffer.readVarInt(buff);
+        for (int i = 0; i < phoneticRunCount; i++) {
+            CTPhoneticRun phoneticRun = st.addNewRPh();
+            phoneticRun.setSb(CodecBuffer.readVarLong(buff));
+            phoneticRun.setEb(CodecBuffer.readVarLong(buff));
+            if ((buff.get() & RUN_T) != 0) {
+                phoneticRun.setT(CodecBuffer.readString(buff));
+            }
+        }
+        if ((flags & FLAG_PHONETIC_PR) != 0) {
+            CTPhoneticPr pr = st.addNewPhoneticPr();
+            pr.setFontId(CodecBuffer.readVarLong(buff));
+            readAttribute(buff, pr, PHONETIC_TYPE);
+            readAttribute(buff, pr, PHONETIC_ALIGNMENT);
+        }
+        return st;
+    }
+
+    /**
+     * @return whether the entry only has text (no formatting runs or phonetic data)
+     */
+    static boolean isPlain(CTRst st) {
+        return st.isSetT() && st.sizeOfRArray() == 0 && st.sizeOfRPhArray() == 0 && !st.isSetPhoneticPr();
+    }
+
+    /**
+     * @return a rough estimate of the heap used by the decoded rich text
+     */
+    static int getMemory(CTRst st) {
+        int memory = 256;
+        if (st.isSetT()) {
+            memory += 2 * st.getT().length();
+        }
+        return memory + 512 * st.sizeOfRArray() + 256 * st.sizeOfRPhArray();
+    }
+
+    static void writeString(CodecBuffer buff, String s) {
+        buff.putString(s);
+    }
+
+    /**
+     * @return a rough estimate of the heap used by an entry (a <code>String</code> or a <code>CTRst</code>)
+     */
+    static int getEntryMemory(Object entry) {
+        if (entry instanceof String) {
+            return 24 + 2 * ((String) entry).length();
+        }
+        return getMemory((CTRst) entry);
+    }
+
+    private static void writeRunProperties(CodecBuffer buff, CTRPrElt pr) {
+        // the properties are a repeating choice, so walk the children to keep their document order
+        int count = 0;
+        XmlCursor c = pr.newCursor();
+        try {
+            if (c.toFirstChild()) {
+                do {
+                    count++;
+                } while (c.toNextSibling());
+            }
+            buff.putVarInt(count);
+            c.toParent();
+            if (c.toFirstChild()) {
+                do {
+                    writeRunProperty(buff, c.getName().getLocalPart(), c.getObject());
+                } while (c.toNextSibling());
+            }
+        } finally {
+            c.dispose();
+        }
+    }
+
+    private static void writeRunProperty(CodecBuffer buff, String name, XmlObject property) {
+        if (property instanceof CTFontName) {
+            buff.put((byte) PR_RFONT);
+            writeString(buff, ((CTFontName) property).getVal());
+        } else if (property instanceof CTIntProperty) {
+            buff.put((byte) ("charset".equals(name) ? PR_CHARSET : PR_FAMILY));
+            buff.putVarInt(((CTIntProperty) property).getVal());
+        } else if (property instanceof CTBooleanProperty) {
+            buff.put((byte) getBooleanPropertyCode(name));
+            CTBooleanProperty booleanProperty = (CTBooleanProperty) property;
+            buff.put(booleanProperty.isSetVal() ? (booleanProperty.getVal() ? BOOLEAN_TRUE : BOOLEAN_FALSE) : BOOLEAN_UNSET);
+        } else if (property instanceof CTColor) {
+            buff.put((byte) PR_COLOR);
+            writeColor(buff, (CTColor) property);
+        } else if (property instanceof CTFontSize) {
+            buff.put((byte) PR_SZ).putDouble(((CTFontSize) property).getVal());
+        } else if (property instanceof CTUnderlineProperty) {
+            CTUnderlineProperty u = (CTUnderlineProperty) property;
+            buff.put((byte) PR_U).putVarInt(u.isSetVal() ? u.getVal().intValue() : 0);
+        } else if (property instanceof CTVerticalAlignFontProperty) {
+            buff.put((byte) PR_VERT_ALIGN).putVarInt(((CTVerticalAlignFontProperty) property).getVal().intValue());
+        } else if (property instanceof CTFontScheme) {
+            buff.put((byte) PR_SCHEME).putVarInt(((CTFontScheme) property).getVal().intValue());
+        } else {
+            throw new IllegalArgumentException("Unexpected run property: " + name);
+        }
+    }
+
+    private static int getBooleanPropertyCode(String name) {
+        switch (name) {
+            case "b":
+                return PR_B;
+            case "i":
+                return PR_I;
+            case "strike":
+                return PR_STRIKE;
+            case "outline":
+                return PR_OUTLINE;
+            case "shadow":
+                return PR_SHADOW;
+            case "condense":
+                return PR_CONDENSE;
+            case "extend":
+                return PR_EXTEND;
+            default:
+                throw new IllegalArgumentException("Unexpected run property: " + name);
+        }
+    }
+
+    private static void writeColor(CodecBuffer buff, CTColor color) {
+        int flags = (color.isSetAuto() ? COLOR_AUTO : 0) | (color.isSetIndexed() ? COLOR_INDEXED : 0)
+                | (color.isSetRgb() ? COLOR_RGB : 0) | (color.isSetTheme() ? COLOR_THEME : 0)
+                | (color.isSetTint() ? COLOR_TINT : 0);
+        buff.put((byte) flags);
+        if (color.isSetAuto()) {
+            buff.put((byte) (color.getAuto() ? 1 : 0));
+        }
+        if (color.isSetIndexed()) {
+            buff.putVarLong(color.getIndexed());
+        }
+        if (color.isSetRgb()) {
+            byte[] rgb = color.getRgb();
+            buff.putVarInt(rgb.length).put(rgb);
+        }
+        if (color.isSetTheme()) {
+            buff.putVarLong(color.getTheme());
+        }
+        if (color.isSetTint()) {
+            buff.putDouble(color.getTint());
+        }
+    }
+
+    private static void readRunProperties(ByteBuffer buff, CTRPrElt pr) {
+        int count = CodecBuffer.readVarInt(buff);
+        for (int i = 0; i < count; i++) {
+            int code = buff.get();
+            switch (code) {
+                case PR_RFONT:
+                    pr.addNewRFont().setVal(CodecBuffer.readString(buff));
+                    break;
+                case PR_CHARSET:
+                    pr.addNewCharset().setVal(CodecBuffer.readVarInt(buff));
+                    break;
+                case PR_FAMILY:
+                    pr.addNewFamily().setVal(CodecBuffer.readVarInt(buff));
+                    break;
+                case PR_B:
+                    readBooleanProperty(buff, pr.addNewB());
+                    break;
+                case PR_I:
+                    readBooleanProperty(buff, pr.addNewI());
+                    break;
+                case PR_STRIKE:
+                    readBooleanProperty(buff, pr.addNewStrike());
+                    break;
+                case PR_OUTLINE:
+                    readBooleanProperty(buff, pr.addNewOutline());
+                    break;
+                case PR_SHADOW:
+                    readBooleanProperty(buff, pr.addNewShadow());
+                    break;
+                case PR_CONDENSE:
+                    readBooleanProperty(buff, pr.addNewCondense());
+                    break;
+                case PR_EXTEND:
+                    readBooleanProperty(buff, pr.addNewExtend());
+                    break;
+                case PR_COLOR:
+                    readColor(buff, pr.addNewColor());
+                    break;
+                case PR_SZ:
+                    pr.addNewSz().setVal(buff.getDouble());
+                    break;
+                case PR_U: {
+                    CTUnderlineProperty u = pr.addNewU();
+                    int val = CodecBuffer.readVarInt(buff);
+                    if (val != 0) {
+                        u.setVal(STUnderlineValues.Enum.forInt(val));
+                    }
+                    break;
+                }
+                case PR_VERT_ALIGN:
+                    pr.addNewVertAlign().setVal(STVerticalAlignRun.Enum.forInt(CodecBuffer.readVarInt(buff)));
+                    break;
+                case PR_SCHEME:
+                    pr.addNewScheme().setVal(STFontScheme.Enum.forInt(CodecBuffer.readVarInt(buff)));
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected run property code: " + code);
+            }
+        }
+    }
+
+    private static void readBooleanProperty(ByteBuffer buff, CTBooleanProperty property) {
+        byte val = buff.get();
+        if (val != BOOLEAN_UNSET) {
+            property.setVal(val == BOOLEAN_TRUE);
+        }
+    }
+
+    private static void readColor(ByteBuffer buff, CTColor color) {
+        int flags = buff.get();
+        if ((flags & COLOR_AUTO) != 0) {
+            color.setAuto(buff.get() != 0);
+        }
+        if ((flags & COLOR_INDEXED) != 0) {
+            color.setIndexed(CodecBuffer.readVarLong(buff));
+        }
+        if ((flags & COLOR_RGB) != 0) {
+            byte[] rgb = new byte[CodecBuffer.readVarInt(buff)];
+            buff.get(rgb);
+            color.setRgb(rgb);
+        }
+        if ((flags & COLOR_THEME) != 0) {
+            color.setTheme(CodecBuffer.readVarLong(buff));
+        }
+        if ((flags & COLOR_TINT) != 0) {
+            color.setTint(buff.getDouble());
+        }
+    }
+
+    private static void writeAttribute(CodecBuffer buff, XmlObject xo, QName name) {
+        String value;
+        XmlCursor c = xo.newCursor();
+        try {
+            value = c.getAttributeText(name);
+        } finally {
+            c.dispose();
+        }
+        if (value == null) {
+            buff.put((byte) 0);
+        } else {
+            buff.put((byte) 1);
+            writeString(buff, value);
+        }
+    }
+
+    private static void readAttribute(ByteBuffer buff, XmlObject xo, QName name) {
+        if (buff.get() != 0) {
+            String value = CodecBuffer.readString(buff);
+            XmlCursor c = xo.newCursor();
+            try {
+                // add after any existing attributes
+                c.toNextToken();
+                while (c.isAttr()) {
+                    c.toNextToken();
+                }
+                c.insertAttributeWithValue(name, value);
+            } finally {
+                c.dispose();
+            }
+        }
+    }
+
+    /**
+     * Adds <code>xml:space="preserve"</code> when the text has leading or trailing whitespace,
+     * like <code>XSSFRichTextString</code> does.
+     */
+    static void preserveSpaces(XmlAnySimpleType xs) {
+        String text = xs.getStringValue();
+        if (text != null && !text.isEmpty()
+                && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)))) {
+            XmlCursor c = xs.newCursor();
+            try {
+                c.toNextToken();
+                c.insertAttributeWithValue(XML_SPACE, "preserve");
+            } finally {
+                c.dispose();
+            }
+        }
+    }
+}
@@ -2,13 +2,17 @@ package com.github.pjfanning.poi.xssf.streaming;
 
 import org.apache.poi.ooxml.POIXMLDocumentPart;
 import org.apache.poi.ooxml.POIXMLRelation;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFFactory;
 import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class SXSSFFactory extends XSSFFactory {
 
     private boolean encryptTempFiles = false;
     private boolean enableTempFileSharedStrings = true;
+    private SharedStringsConfig sharedStringsConfig = new SharedStringsConfig();
+    private DedupPolicy dedupPolicy;
 
     public SXSSFFactory() {}
 
@@ -41,14 +45,63 @@ public class SXSSFFactory extends XSSFFactory {
         return this;
     }
 
+    /**
+     * @param sharedStringsConfig settings for the temp file shared strings table, including the storage engine
+     *                            (must not be null)
+     * @return this factory instance
+     * @throws IllegalArgumentException if <code>sharedStringsConfig</code> is null
+     * @since v2.3.0
+     */
+    public SXSSFFactory sharedStringsConfig(SharedStringsConfig sharedStringsConfig) {
+        if (sharedStringsConfig == null) {
+            throw new IllegalArgumentException("sharedStringsConfig must not be null");
+        }
+        this.sharedStringsConfig = sharedStringsConfig;
+        return this;
+    }
+
+    /**
+     * Overrides the dedup policy of the shared strings config for the tables that this factory creates. The
+     * config that was passed to {@link #sharedStringsConfig(SharedStringsConfig)} is not changed.
+     *
+     * @param dedupPolicy how duplicates of the added strings are found (null uses the policy of the config,
+     *                    which is {@link DedupPolicy#FULL} by default)
+     * @return this factory instance
+     * @see SharedStringsConfig#dedupPolicy(DedupPolicy)
+     * @since v2.3.0
+     */
+    public SXSSFFactory dedupPolicy(DedupPolicy dedupPolicy) {
+        this.dedupPolicy = dedupPolicy;
+        return this;
+    }
+
+    /**
+     * Creates a streaming workbook that uses this factory. When temp file shared strings are enabled, string cell
+     * values are added to the shared strings table as plain <code>String</code>s, without creating XMLBeans objects.
+     *
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out
+     * @param compressTmpFiles whether to use gzip compression for the temp sheet files
+     * @return a new workbook
+     * @see TempFileSXSSFWorkbook
+     * @since v2.3.0
+     */
+    public SXSSFWorkbook createSXSSFWorkbook(int rowAccessWindowSize, boolean compressTmpFiles) {
+        return new TempFileSXSSFWorkbook(new XSSFWorkbook(this), rowAccessWindowSize, compressTmpFiles,
+                enableTempFileSharedStrings);
+    }
+
     @Override
     public POIXMLDocumentPart newDocumentPart(POIXMLRelation descriptor) {
         if (XSSFRelation.SHARED_STRINGS.getRelation().equals(descriptor.getRelation()) && enableTempFileSharedStrings) {
             try {
-                return new TempFileSharedStringsTable(encryptTempFiles);
-            } catch (Error|RuntimeException e) {
+                SharedStringsConfig config = sharedStringsConfig;
+                if (dedupPolicy != null) {
+                    config = new SharedStringsConfig(sharedStringsConfig).dedupPolicy(dedupPolicy);
+                }
+                return new TempFileSharedStringsTable(encryptTempFiles, false, config);
+            } catch (NoClassDefFoundError e) {
                 throw new RuntimeException("Exception creating TempFileSharedStringsTable; com.h2database h2 jar is " +
-                        "required for this feature and is not included as a core dependency of poi-ooxml");
+                        "required for this feature and is not included as a core dependency of poi-ooxml", e);
             }
         }
         return super.newDocumentPart(descriptor);
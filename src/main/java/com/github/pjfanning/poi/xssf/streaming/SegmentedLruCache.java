@@ -0,0 +1,109 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Segmented LRU cache bounded by entry count and by estimated bytes. New entries go into a probationary
+ * segment and are promoted to the protected segment when they are read again, so one-off reads do not
+ * push out the frequently used entries. This class is not thread-safe.
+ */
+class SegmentedLruCache<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int maxProtectedEntries;
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    SegmentedLruCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxProtectedEntries = Math.max(1, (int) (maxEntries * 0.8));
+    }
+
+    V get(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            protectedSegment.put(key, entry);
+            if (protectedSegment.size() > maxProtectedEntries) {
+                Iterator<Map.Entry<K, Entry<V>>> iter = protectedSegment.entrySet().iterator();
+                Map.Entry<K, Entry<V>> eldest = iter.next();
+                iter.remove();
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+        hits++;
+        return entry.value;
+    }
+
+    void put(K key, V value, long weight) {
+        if (weight > maxBytes) {
+            return;
+        }
+        Entry<V> old = probation.put(key, new Entry<>(value, weight));
+        if (old == null) {
+            old = protectedSegment.remove(key);
+        }
+        if (old != null) {
+            bytes -= old.weight;
+        }
+        bytes += weight;
+        while (size() > maxEntries || bytes > maxBytes) {
+            evict(probation.isEmpty() ? protectedSegment : probation);
+        }
+    }
+
+    void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        bytes = 0;
+    }
+
+    int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    private void evict(LinkedHashMap<K, Entry<V>> segment) {
+        Iterator<Entry<V>> iter = segment.values().iterator();
+        bytes -= iter.next().weight;
+        iter.remove();
+    }
+}
@@ -7,11 +7,15 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
 
 import java.io.Serializable;
 
-class SerializableComment implements Serializable {
+/**
+ * A comment as it is held in a {@link CommentsStore}.
+ */
+public class SerializableComment implements Serializable {
 
     private static final long serialVersionUID = 7829136421241571165L;
 
     private String author;
+    private int authorId = -1;
     private CTRst ctRst; //CTRstImpl is Serializable
     private String addressAsText; //Serializable version of cellAddress
     private transient CellAddress cellAddress; //CellAddress is not Serializable
@@ -34,6 +38,17 @@ class SerializableComment implements Serializable {
         this.author = author;
     }
 
+    /**
+     * @return the index of the author in the comments table authors list (-1 if not known)
+     */
+    public int getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(int authorId) {
+        this.authorId = authorId;
+    }
+
     public int getColumn() {
         CellAddress address = getAddress();
         if (address == null) {
@@ -97,6 +112,14 @@ class SerializableComment implements Serializable {
         this.ctRst = ((XSSFRichTextString)string).getCTRst();
     }
 
+    CTRst getCTRst() {
+        return ctRst;
+    }
+
+    void setCTRst(CTRst ctRst) {
+        this.ctRst = ctRst;
+    }
+
     public void setString(String text) {
         XSSFRichTextString rts = new XSSFRichTextString();
         rts.setString(text);
@@ -0,0 +1,95 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MVStore data type for <code>SerializableComment</code>. The cell address is stored as its row and column
+ * numbers and the author is stored as an author id when it is known.
+ */
+class SerializableCommentDataType extends BasicDataType<SerializableComment> {
+
+    static final SerializableCommentDataType INSTANCE = new SerializableCommentDataType();
+
+    private static final int FLAG_VISIBLE = 1;
+    private static final int FLAG_ADDRESS = 2;
+    private static final int FLAG_AUTHOR_ID = 4;
+    private static final int FLAG_AUTHOR = 8;
+    private static final int FLAG_TEXT = 16;
+    private static final int FLAG_RICH_TEXT = 32;
+
+    private static final SerializableComment[] EMPTY_ARRAY = new SerializableComment[0];
+
+    private SerializableCommentDataType() {}
+
+    @Override
+    public int getMemory(SerializableComment comment) {
+        int memory = 128;
+        if (comment.getAuthor() != null) {
+            memory += 2 * comment.getAuthor().length();
+        }
+        CTRst ctRst = comment.getCTRst();
+        return ctRst == null ? memory : memory + RichTextCodec.getMemory(ctRst);
+    }
+
+    @Override
+    public void write(WriteBuffer buff, SerializableComment comment) {
+        CTRst ctRst = comment.getCTRst();
+        boolean plain = ctRst != null && RichTextCodec.isPlain(ctRst);
+        int flags = (comment.isVisible() ? FLAG_VISIBLE : 0)
+                | (comment.getAddress() != null ? FLAG_ADDRESS : 0)
+                | (comment.getAuthorId() >= 0 ? FLAG_AUTHOR_ID : (comment.getAuthor() != null ? FLAG_AUTHOR : 0))
+                | (ctRst == null ? 0 : (plain ? FLAG_TEXT : FLAG_RICH_TEXT));
+        buff.put((byte) flags);
+        if ((flags & FLAG_ADDRESS) != 0) {
+            buff.putVarInt(comment.getRow()).putVarInt(comment.getColumn());
+        }
+        if ((flags & FLAG_AUTHOR_ID) != 0) {
+            buff.putVarInt(comment.getAuthorId());
+        } else if ((flags & FLAG_AUTHOR) != 0) {
+            writeString(buff, comment.getAuthor());
+        }
+        if (plain) {
+            writeString(buff, ctRst.getT());
+        } else if (ctRst != null) {
+            CodecBuffer codecBuffer = new CodecBuffer();
+            RichTextCodec.write(codecBuffer, ctRst);
+            buff.put(codecBuffer.array(), 0, codecBuffer.length());
+        }
+    }
+
+    private static void writeString(WriteBuffer buff, String s) {
+        buff.putVarInt(s.length()).putStringData(s, s.length());
+    }
+
+    @Override
+    public SerializableComment read(ByteBuffer buff) {
+        SerializableComment comment = new SerializableComment();
+        int flags = buff.get();
+        comment.setVisible((flags & FLAG_VISIBLE) != 0);
+        if ((flags & FLAG_ADDRESS) != 0) {
+            int row = DataUtils.readVarInt(buff);
+            comment.setAddress(row, DataUtils.readVarInt(buff));
+        }
+        if ((flags & FLAG_AUTHOR_ID) != 0) {
+            comment.setAuthorId(DataUtils.readVarInt(buff));
+        } else if ((flags & FLAG_AUTHOR) != 0) {
+            comment.setAuthor(DataUtils.readString(buff));
+        }
+        if ((flags & FLAG_TEXT) != 0) {
+            comment.setString(DataUtils.readString(buff));
+        } else if ((flags & FLAG_RICH_TEXT) != 0) {
+            comment.setCTRst(RichTextCodec.read(buff));
+        }
+        return comment;
+    }
+
+    @Override
+    public SerializableComment[] createStorage(int size) {
+        return size == 0 ? EMPTY_ARRAY : new SerializableComment[size];
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MVStore data type for the entries in <code>TempFileSharedStringsTable</code>. Plain text entries are
+ * <code>String</code>s and formatted entries are <code>CTRst</code> instances.
+ */
+class SharedStringDataType extends BasicDataType<Object> {
+
+    static final SharedStringDataType INSTANCE = new SharedStringDataType();
+
+    private static final byte TYPE_TEXT = 0;
+    private static final byte TYPE_RICH_TEXT = 1;
+
+    private static final Object[] EMPTY_OBJ_ARRAY = new Object[0];
+
+    private SharedStringDataType() {}
+
+    @Override
+    public int getMemory(Object obj) {
+        return RichTextCodec.getEntryMemory(obj);
+    }
+
+    @Override
+    public void write(WriteBuffer buff, Object obj) {
+        if (obj instanceof String) {
+            buff.put(TYPE_TEXT);
+            String text = (String) obj;
+            buff.putVarInt(text.length()).putStringData(text, text.length());
+        } else {
+            buff.put(TYPE_RICH_TEXT);
+            CodecBuffer codecBuffer = new CodecBuffer();
+            RichTextCodec.write(codecBuffer, (CTRst) obj);
+            buff.put(codecBuffer.array(), 0, codecBuffer.length());
+        }
+    }
+
+    @Override
+    public Object read(ByteBuffer buff) {
+        byte type = buff.get();
+        switch (type) {
+            case TYPE_TEXT:
+                return DataUtils.readString(buff);
+            case TYPE_RICH_TEXT:
+                return RichTextCodec.read(buff);
+            default:
+                throw new IllegalStateException("Unexpected shared string entry type: " + type);
+        }
+    }
+
+    @Override
+    public Object[] createStorage(int size) {
+        return size == 0 ? EMPTY_OBJ_ARRAY : new Object[size];
+    }
+}
@@ -0,0 +1,479 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Optional settings for {@link TempFileSharedStringsTable}. The defaults match the behaviour of the
+ * table when it is created without a config.
+ *
+ * @since v2.3.0
+ */
+public class SharedStringsConfig {
+
+    private int cacheMaxEntries = 0;
+    private long cacheMaxBytes = 0;
+    private boolean hashDedupIndex = false;
+    private boolean mappedLogStore = false;
+    private SharedStringsStoreFactory storeFactory;
+    private int spillMaxHeapEntries = 0;
+    private long spillMaxHeapBytes = 0;
+    private boolean pipelinedLoading = false;
+    private boolean preSerializeEntries = false;
+    private boolean lazyLoading = false;
+    private MVStoreConfig mvStoreConfig = new MVStoreConfig();
+    private int bloomFilterExpectedEntries = 0;
+    private double bloomFilterFalsePositiveRate = 0.01;
+    private DedupPolicy dedupPolicy = DedupPolicy.FULL;
+    private int dedupWorkingSetSize = 10000;
+    private boolean compactOnWrite = false;
+    private boolean parallelWrite = false;
+    private Executor parallelWriteExecutor = ForkJoinPool.commonPool();
+    private int parallelWriteChunkSize = 4096;
+    private int parallelWriteMaxChunksInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+    public SharedStringsConfig() {}
+
+    /**
+     * Copies the settings of another config. The {@link MVStoreConfig} is shared with the other config.
+     */
+    SharedStringsConfig(SharedStringsConfig other) {
+        this.cacheMaxEntries = other.cacheMaxEntries;
+        this.cacheMaxBytes = other.cacheMaxBytes;
+        this.hashDedupIndex = other.hashDedupIndex;
+        this.mappedLogStore = other.mappedLogStore;
+        this.storeFactory = other.storeFactory;
+        this.spillMaxHeapEntries = other.spillMaxHeapEntries;
+        this.spillMaxHeapBytes = other.spillMaxHeapBytes;
+        this.pipelinedLoading = other.pipelinedLoading;
+        this.preSerializeEntries = other.preSerializeEntries;
+        this.lazyLoading = other.lazyLoading;
+        this.mvStoreConfig = other.mvStoreConfig;
+        this.bloomFilterExpectedEntries = other.bloomFilterExpectedEntries;
+        this.bloomFilterFalsePositiveRate = other.bloomFilterFalsePositiveRate;
+        this.dedupPolicy = other.dedupPolicy;
+        this.dedupWorkingSetSize = other.dedupWorkingSetSize;
+        this.compactOnWrite = other.compactOnWrite;
+        this.parallelWrite = other.parallelWrite;
+        this.parallelWriteExecutor = other.parallelWriteExecutor;
+        this.parallelWriteChunkSize = other.parallelWriteChunkSize;
+        this.parallelWriteMaxChunksInFlight = other.parallelWriteMaxChunksInFlight;
+    }
+
+    /**
+     * Enables an in-heap cache of recently read entries in front of the temp file store. Sheets tend
+     * to refer to the same shared strings again and again, so even a small cache saves most of the
+     * store lookups. The cache is disabled by default.
+     *
+     * @param maxEntries the maximum number of entries to cache (0 disables the cache)
+     * @param maxBytes the maximum estimated heap size of the cached entries (must be positive when the cache is enabled)
+     * @return this config instance
+     */
+    public SharedStringsConfig cache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        if (maxEntries > 0 && maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.cacheMaxEntries = maxEntries;
+        this.cacheMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of cached entries (0 means the cache is disabled)
+     */
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    /**
+     * @return the maximum estimated heap size of the cached entries
+     */
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    /**
+     * Finds duplicate entries using an index of 64-bit hashes instead of an index of the full entry text.
+     * This roughly halves the size of the temp file when most of the added strings are unique. Hash
+     * collisions are resolved by comparing with the stored entries. The default is false.
+     *
+     * @param hashDedupIndex whether to use an index of hashes to find duplicate entries
+     * @return this config instance
+     */
+    public SharedStringsConfig hashDedupIndex(boolean hashDedupIndex) {
+        this.hashDedupIndex = hashDedupIndex;
+        return this;
+    }
+
+    /**
+     * @return whether duplicate entries are found using an index of hashes
+     */
+    public boolean isHashDedupIndex() {
+        return hashDedupIndex;
+    }
+
+    /**
+     * Stores the shared strings in an append-only, memory-mapped temp file instead of a H2 MVStore.
+     * Shared string indexes are dense and only ever appended, so this store looks up entries with a single
+     * read of the mapped file. It holds the file offsets and a hash index (used to find duplicates) in
+     * heap, about 20 bytes per entry. The default is false.
+     *
+     * @param mappedLogStore whether to use the memory-mapped store
+     * @return this config instance
+     */
+    public SharedStringsConfig mappedLogStore(boolean mappedLogStore) {
+        this.mappedLogStore = mappedLogStore;
+        return this;
+    }
+
+    /**
+     * @return whether the shared strings are stored in a memory-mapped temp file
+     */
+    public boolean isMappedLogStore() {
+        return mappedLogStore;
+    }
+
+    /**
+     * Sets the storage engine for the shared strings. This takes precedence over
+     * {@link #mappedLogStore(boolean)} and {@link #hashDedupIndex(boolean)}.
+     *
+     * @param storeFactory creates the store (null to use the store selected by the other settings)
+     * @return this config instance
+     * @see SharedStringsStoreFactory
+     */
+    public SharedStringsConfig storeFactory(SharedStringsStoreFactory storeFactory) {
+        this.storeFactory = storeFactory;
+        return this;
+    }
+
+    /**
+     * Keeps the shared strings in heap until there are more than <code>maxHeapEntries</code> entries or their
+     * estimated size passes <code>maxHeapBytes</code>. Then the entries are moved to the store selected by the
+     * other settings. Most workbooks only have a few hundred shared strings and this avoids creating a temp
+     * file for them. Spilling is disabled by default.
+     *
+     * @param maxHeapEntries the maximum number of entries to hold in heap (0 disables spilling)
+     * @param maxHeapBytes the maximum estimated heap size of the entries (must be positive when spilling is enabled)
+     * @return this config instance
+     */
+    public SharedStringsConfig spillToDisk(int maxHeapEntries, long maxHeapBytes) {
+        if (maxHeapEntries < 0) {
+            throw new IllegalArgumentException("maxHeapEntries must not be negative");
+        }
+        if (maxHeapEntries > 0 && maxHeapBytes < 1) {
+            throw new IllegalArgumentException("maxHeapBytes must be positive");
+        }
+        this.spillMaxHeapEntries = maxHeapEntries;
+        this.spillMaxHeapBytes = maxHeapBytes;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of entries held in heap before moving to disk (0 means spilling is disabled)
+     */
+    public int getSpillMaxHeapEntries() {
+        return spillMaxHeapEntries;
+    }
+
+    /**
+     * @return the maximum estimated heap size of the entries held in heap before moving to disk
+     */
+    public long getSpillMaxHeapBytes() {
+        return spillMaxHeapBytes;
+    }
+
+    /**
+     * Loads the shared strings with two threads: the calling thread inflates and parses the XML and hands
+     * over batches of entries to a writer thread that stores them. This helps on multi-core machines when
+     * loading large shared strings parts. Entries that are already stored can be read with
+     * <code>getItemAt</code> while the loading continues. The default is false.
+     *
+     * @param pipelinedLoading whether to store the entries on a separate thread when loading
+     * @return this config instance
+     */
+    public SharedStringsConfig pipelinedLoading(boolean pipelinedLoading) {
+        this.pipelinedLoading = pipelinedLoading;
+        return this;
+    }
+
+    /**
+     * @return whether the entries are stored on a separate thread when loading
+     */
+    public boolean isPipelinedLoading() {
+        return pipelinedLoading;
+    }
+
+    /**
+     * Writes the {@code <si>} XML of each entry to an append-only temp file when the entry is added, so that
+     * <code>writeTo</code> copies that file instead of serializing every entry again. This makes saving
+     * workbooks with many shared strings much faster, at the cost of a second temp file. The default is false.
+     *
+     * @param preSerializeEntries whether to keep the {@code <si>} XML of each entry
+     * @return this config instance
+     */
+    public SharedStringsConfig preSerializeEntries(boolean preSerializeEntries) {
+        this.preSerializeEntries = preSerializeEntries;
+        return this;
+    }
+
+    /**
+     * @return whether the {@code <si>} XML of each entry is kept for <code>writeTo</code>
+     */
+    public boolean isPreSerializeEntries() {
+        return preSerializeEntries;
+    }
+
+    /**
+     * Loads the shared strings part lazily. The part is copied into a temp file and only the byte offsets of
+     * the entries are indexed; each entry is parsed when it is read. This makes opening large workbooks much
+     * faster when only some of the cells are read. The entries are moved into the store when the table is
+     * changed. The default is false.
+     *
+     * @param lazyLoading whether to parse the entries when they are read
+     * @return this config instance
+     */
+    public SharedStringsConfig lazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+        return this;
+    }
+
+    /**
+     * @return whether the entries are parsed when they are read
+     */
+    public boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
+    /**
+     * Sets the tuning settings of the H2 MVStore that holds the shared strings. This is ignored when
+     * {@link #mappedLogStore(boolean)} or {@link #storeFactory(SharedStringsStoreFactory)} is used.
+     *
+     * @param mvStoreConfig tuning settings for the MVStore
+     * @return this config instance
+     * @see MVStoreConfig#lowMemory()
+     * @see MVStoreConfig#fastDisk()
+     * @see MVStoreConfig#smallDisk()
+     */
+    public SharedStringsConfig mvStoreConfig(MVStoreConfig mvStoreConfig) {
+        if (mvStoreConfig == null) {
+            throw new IllegalArgumentException("mvStoreConfig must not be null");
+        }
+        this.mvStoreConfig = mvStoreConfig;
+        return this;
+    }
+
+    /**
+     * @return the tuning settings of the H2 MVStore
+     */
+    public MVStoreConfig getMVStoreConfig() {
+        return mvStoreConfig;
+    }
+
+    /**
+     * Keeps an in-heap Bloom filter of the dedup keys in front of the store. When an added string is new, the
+     * filter can usually tell without searching the store, which helps when most of the added strings are
+     * unique (eg ids, free text or URLs). The filter uses about 10 bits per entry for a 1% false positive rate,
+     * and grows when there are more entries than expected. <code>TempFileSharedStringsTable</code> reports how
+     * well the filter is working. The filter is disabled by default.
+     *
+     * @param expectedEntries the expected number of unique entries (0 disables the filter)
+     * @param falsePositiveRate the target false positive rate, eg 0.01
+     * @return this config instance
+     * @see TempFileSharedStringsTable#getBloomFilterFalsePositiveRate()
+     */
+    public SharedStringsConfig bloomFilter(int expectedEntries, double falsePositiveRate) {
+        if (expectedEntries < 0) {
+            throw new IllegalArgumentException("expectedEntries must not be negative");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.bloomFilterExpectedEntries = expectedEntries;
+        this.bloomFilterFalsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    /**
+     * @return the expected number of unique entries of the Bloom filter (0 means the filter is disabled)
+     */
+    public int getBloomFilterExpectedEntries() {
+        return bloomFilterExpectedEntries;
+    }
+
+    /**
+     * @return the target false positive rate of the Bloom filter
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        return bloomFilterFalsePositiveRate;
+    }
+
+    /**
+     * Sets how duplicates of added strings are found. {@link DedupPolicy#NONE} never looks for duplicates,
+     * {@link DedupPolicy#BOUNDED} only looks in an in-heap working set of recently and frequently added entries
+     * and {@link DedupPolicy#FULL} (the default) looks in all the entries. This trades the size of the shared
+     * strings part against the speed of adding strings and the size of the temp files.
+     *
+     * @param dedupPolicy the dedup policy
+     * @return this config instance
+     * @see #dedupWorkingSetSize(int)
+     */
+    public SharedStringsConfig dedupPolicy(DedupPolicy dedupPolicy) {
+        if (dedupPolicy == null) {
+            throw new IllegalArgumentException("dedupPolicy must not be null");
+        }
+        this.dedupPolicy = dedupPolicy;
+        return this;
+    }
+
+    /**
+     * @return the dedup policy
+     */
+    public DedupPolicy getDedupPolicy() {
+        return dedupPolicy;
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries in the working set of {@link DedupPolicy#BOUNDED}
+     *                   (default is 10000)
+     * @return this config instance
+     */
+    public SharedStringsConfig dedupWorkingSetSize(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.dedupWorkingSetSize = maxEntries;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of entries in the working set of {@link DedupPolicy#BOUNDED}
+     */
+    public int getDedupWorkingSetSize() {
+        return dedupWorkingSetSize;
+    }
+
+    /**
+     * Compacts the shared strings when a {@link TempFileSXSSFWorkbook} is saved. The table counts how often the
+     * cells of the streamed sheets refer to each entry; the saved shared strings part then only has the entries
+     * that cells refer to, the most used first, and the cell values are remapped to the new indexes while the
+     * sheets are written. The entries are read from the store one at a time, so saving needs about 20 bytes of
+     * heap per entry for the counts and the remap table. Compaction is skipped if the template workbook has rows.
+     * Tables that are not used by a <code>TempFileSXSSFWorkbook</code> ignore this setting. The default is false.
+     *
+     * @param compactOnWrite whether to drop unused entries and order the entries by use when saving the workbook
+     * @return this config instance
+     */
+    public SharedStringsConfig compactOnWrite(boolean compactOnWrite) {
+        this.compactOnWrite = compactOnWrite;
+        return this;
+    }
+
+    /**
+     * @return whether the shared strings are compacted when a <code>TempFileSXSSFWorkbook</code> is saved
+     */
+    public boolean isCompactOnWrite() {
+        return compactOnWrite;
+    }
+
+    /**
+     * Serializes the entries on several threads in <code>writeTo</code>. The entries are split into chunks that are
+     * serialized on the executor (the common <code>ForkJoinPool</code> by default) and written in order. This
+     * makes saving workbooks with many formatted shared strings much faster on multi-core machines. If the table
+     * is frozen, the entries are also read from the store on the executor; otherwise they are read on the calling
+     * thread. The default is false.
+     *
+     * @param parallelWrite whether to serialize the entries on several threads
+     * @return this config instance
+     * @see #parallelWriteChunks(int, int)
+     */
+    public SharedStringsConfig parallelWrite(boolean parallelWrite) {
+        this.parallelWrite = parallelWrite;
+        return this;
+    }
+
+    /**
+     * @return whether the entries are serialized on several threads in <code>writeTo</code>
+     */
+    public boolean isParallelWrite() {
+        return parallelWrite;
+    }
+
+    /**
+     * @param executor the executor that serializes the entries when {@link #parallelWrite(boolean)} is enabled
+     *                 (the caller is responsible for shutting it down)
+     * @return this config instance
+     */
+    public SharedStringsConfig parallelWriteExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.parallelWriteExecutor = executor;
+        return this;
+    }
+
+    /**
+     * @return the executor that serializes the entries when parallel writing is enabled
+     */
+    public Executor getParallelWriteExecutor() {
+        return parallelWriteExecutor;
+    }
+
+    /**
+     * Sets the size of the chunks that are serialized by one task when {@link #parallelWrite(boolean)} is enabled,
+     * and how many chunks can be serialized or waiting to be written at once. This bounds the heap that is used
+     * for the serialized XML.
+     *
+     * @param chunkSize the number of entries in a chunk (default is 4096)
+     * @param maxChunksInFlight the maximum number of chunks that are serialized or waiting to be written
+     *                          (default is twice the number of processors)
+     * @return this config instance
+     */
+    public SharedStringsConfig parallelWriteChunks(int chunkSize, int maxChunksInFlight) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("maxChunksInFlight must be positive");
+        }
+        this.parallelWriteChunkSize = chunkSize;
+        this.parallelWriteMaxChunksInFlight = maxChunksInFlight;
+        return this;
+    }
+
+    /**
+     * @return the number of entries in a chunk when parallel writing is enabled
+     */
+    public int getParallelWriteChunkSize() {
+        return parallelWriteChunkSize;
+    }
+
+    /**
+     * @return the maximum number of chunks that are serialized or waiting to be written when parallel writing
+     * is enabled
+     */
+    public int getParallelWriteMaxChunksInFlight() {
+        return parallelWriteMaxChunksInFlight;
+    }
+
+    /**
+     * @return the factory for the storage engine of the shared strings
+     */
+    public SharedStringsStoreFactory getStoreFactory() {
+        SharedStringsStoreFactory factory = storeFactory;
+        if (factory == null) {
+            factory = mappedLogStore ? SharedStringsStoreFactory.mappedLog() :
+                    SharedStringsStoreFactory.mvStore(hashDedupIndex, mvStoreConfig);
+        }
+        if (spillMaxHeapEntries > 0) {
+            factory = SharedStringsStoreFactory.spilling(spillMaxHeapEntries, spillMaxHeapBytes, factory);
+        }
+        if (bloomFilterExpectedEntries > 0) {
+            factory = SharedStringsStoreFactory.bloomFilter(bloomFilterExpectedEntries,
+                    bloomFilterFalsePositiveRate, factory);
+        }
+        return factory;
+    }
+}
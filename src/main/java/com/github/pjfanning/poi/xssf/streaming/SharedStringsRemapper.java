@@ -0,0 +1,78 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copies the sheet data XML written by {@link TempFileSheetDataWriter} and replaces the shared string index of
+ * each string cell using a remap table. The sheet data writers write string cells as
+ * <code>&lt;c r="A1" t="s"&gt;&lt;v&gt;idx&lt;/v&gt;&lt;/c&gt;</code> and escape the quotes and angle brackets
+ * of all the text that they write, so the marker below only occurs in the markup of string cells.
+ */
+class SharedStringsRemapper {
+
+    private static final byte[] MARKER = " t=\"s\"><v>".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int[] remap;
+
+    /**
+     * @param remap the new index of each shared string
+     */
+    SharedStringsRemapper(int[] remap) {
+        this.remap = remap;
+    }
+
+    void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        byte[] outBuf = new byte[BUFFER_SIZE + 16];
+        int outLength = 0;
+        int matched = 0;
+        // the old index while its digits are read (-1 when not in a string cell value)
+        int idx = -1;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = buf[i];
+                if (idx >= 0) {
+                    if (b >= '0' && b <= '9') {
+                        idx = idx * 10 + (b - '0');
+                        continue;
+                    }
+                    outLength = writeIndex(outBuf, outLength, idx);
+                    idx = -1;
+                }
+                outBuf[outLength++] = b;
+                if (b == MARKER[matched]) {
+                    if (++matched == MARKER.length) {
+                        matched = 0;
+                        idx = 0;
+                    }
+                } else {
+                    matched = b == MARKER[0] ? 1 : 0;
+                }
+                if (outLength >= BUFFER_SIZE) {
+                    out.write(outBuf, 0, outLength);
+                    outLength = 0;
+                }
+            }
+        }
+        if (idx >= 0) {
+            outLength = writeIndex(outBuf, outLength, idx);
+        }
+        out.write(outBuf, 0, outLength);
+    }
+
+    private int writeIndex(byte[] outBuf, int outLength, int idx) throws IOException {
+        if (idx >= remap.length || remap[idx] < 0) {
+            throw new IOException("Sheet data refers to shared string " + idx + " that was not counted");
+        }
+        String newIdx = Integer.toString(remap[idx]);
+        for (int i = 0; i < newIdx.length(); i++) {
+            outBuf[outLength++] = (byte) newIdx.charAt(i);
+        }
+        return outLength;
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.Closeable;
+
+/**
+ * Storage engine for the entries of {@link TempFileSharedStringsTable}.
+ * <p>
+ * Entries are stored with dense indexes that are assigned in increasing order, starting at 0. Entries without
+ * any formatting are plain <code>String</code>s, all other entries are <code>CTRst</code> instances. The store
+ * also keeps the index that the table uses to find duplicate entries, keyed by a canonical key of each entry.
+ * </p>
+ * <p>
+ * Implementations are created by a {@link SharedStringsStoreFactory}. They do not need to be thread-safe,
+ * except that {@link #get(int)} must be safe to call from multiple threads after {@link #freeze()}.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public interface SharedStringsStore extends Closeable {
+
+    /**
+     * @param idx the index of the entry
+     * @return the entry or null if there is no entry with this index
+     */
+    Object get(int idx);
+
+    /**
+     * @param idx the index of the entry (the next index after the last one that was stored)
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     */
+    void put(int idx, Object entry);
+
+    /**
+     * @param key the canonical key of the entry
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     * @return the index of an equal entry, or -1 if there is none
+     */
+    int find(String key, Object entry);
+
+    /**
+     * Adds an entry to the index that is used by {@link #find(String, Object)}. When the same key is added
+     * more than once, <code>find</code> may return any of the indexes.
+     *
+     * @param key the canonical key of the entry
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     * @param idx the index of the entry
+     */
+    void add(String key, Object entry, int idx);
+
+    /**
+     * Stores a batch of entries with consecutive indexes and adds them to the index that is used by
+     * {@link #find(String, Object)}. The default implementation calls {@link #add(String, Object, int)} and
+     * {@link #put(int, Object)} for each entry; stores can override this to write the batch in bulk.
+     *
+     * @param firstIdx the index of the first entry (the next index after the last one that was stored)
+     * @param keys the canonical keys of the entries
+     * @param entries the entries (<code>String</code>s or <code>CTRst</code>s)
+     */
+    default void putAll(int firstIdx, String[] keys, Object[] entries) {
+        for (int i = 0; i < entries.length; i++) {
+            add(keys[i], entries[i], firstIdx + i);
+            put(firstIdx + i, entries[i]);
+        }
+    }
+
+    /**
+     * Called when the table is frozen. No more entries are added and, from now on, {@link #get(int)} is called
+     * from multiple threads. The default implementation does nothing, which is fine for stores where
+     * <code>get</code> does not change any state.
+     */
+    default void freeze() {
+    }
+
+    /**
+     * Removes all the entries, so that the store can be reused by a {@link SharedStringsStorePool}. The default
+     * implementation does nothing and returns false, which means that the store cannot be reused.
+     *
+     * @return true if the store was cleared
+     */
+    default boolean clear() {
+        return false;
+    }
+
+    /**
+     * Deletes any temp files. The store cannot be used afterwards.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,87 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Creates the {@link SharedStringsStore} for a {@link TempFileSharedStringsTable}. Use one of the static
+ * methods to get the built-in stores or implement this interface to plug in a custom storage engine.
+ *
+ * @since v2.3.0
+ */
+@FunctionalInterface
+public interface SharedStringsStoreFactory {
+
+    /**
+     * @param encryptTempFiles whether the store should encrypt any temp files that it creates
+     * @return a new, empty store
+     */
+    SharedStringsStore create(boolean encryptTempFiles);
+
+    /**
+     * @return factory for stores that use a H2 MVStore temp file (the default)
+     */
+    static SharedStringsStoreFactory mvStore() {
+        return mvStore(false);
+    }
+
+    /**
+     * @param hashDedupIndex whether to find duplicates using an index of 64-bit hashes instead of an index
+     *                       of the full entry text
+     * @return factory for stores that use a H2 MVStore temp file
+     */
+    static SharedStringsStoreFactory mvStore(boolean hashDedupIndex) {
+        return mvStore(hashDedupIndex, new MVStoreConfig());
+    }
+
+    /**
+     * @param hashDedupIndex whether to find duplicates using an index of 64-bit hashes instead of an index
+     *                       of the full entry text
+     * @param mvStoreConfig tuning settings for the MVStore
+     * @return factory for stores that use a H2 MVStore temp file
+     */
+    static SharedStringsStoreFactory mvStore(boolean hashDedupIndex, MVStoreConfig mvStoreConfig) {
+        return encryptTempFiles -> new MVStoreSharedStringsStore(encryptTempFiles, hashDedupIndex,
+                TempFileSharedStringsTable::getKey, mvStoreConfig);
+    }
+
+    /**
+     * @return factory for stores that use an append-only, memory-mapped temp file
+     */
+    static SharedStringsStoreFactory mappedLog() {
+        return encryptTempFiles -> new MappedLogSharedStringsStore(encryptTempFiles,
+                TempFileSharedStringsTable::getKey);
+    }
+
+    /**
+     * @return factory for stores that keep all the entries in heap (like the POI <code>SharedStringsTable</code>).
+     * This is only useful for small workbooks. <code>encryptTempFiles</code> is ignored, as no temp files are used.
+     */
+    static SharedStringsStoreFactory inHeap() {
+        return encryptTempFiles -> new InHeapSharedStringsStore();
+    }
+
+    /**
+     * @param maxHeapEntries the number of entries that are held in heap before moving to the disk store
+     * @param maxHeapBytes the estimated size of the entries that are held in heap before moving to the disk store
+     * @param diskStoreFactory creates the store that the entries are moved to
+     * @return factory for stores that keep the entries in heap until a threshold is passed and then move them
+     * to the store created by <code>diskStoreFactory</code>
+     */
+    static SharedStringsStoreFactory spilling(int maxHeapEntries, long maxHeapBytes,
+                                              SharedStringsStoreFactory diskStoreFactory) {
+        return encryptTempFiles -> new SpillingSharedStringsStore(maxHeapEntries, maxHeapBytes, diskStoreFactory,
+                encryptTempFiles, TempFileSharedStringsTable::getKey);
+    }
+
+    /**
+     * @param expectedEntries the expected number of unique entries (the filter grows if there are more)
+     * @param falsePositiveRate the target false positive rate of the filter, eg 0.01
+     * @param storeFactory creates the store that holds the entries
+     * @return factory for stores that keep an in-heap Bloom filter of the dedup keys in front of the store
+     * created by <code>storeFactory</code>
+     */
+    static SharedStringsStoreFactory bloomFilter(int expectedEntries, double falsePositiveRate,
+                                                 SharedStringsStoreFactory storeFactory) {
+        new BloomFilter(expectedEntries, falsePositiveRate); // fail early on invalid settings
+        return encryptTempFiles -> new BloomFilterSharedStringsStore(storeFactory.create(encryptTempFiles),
+                expectedEntries, falsePositiveRate);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.Closeable;
+
+/**
+ * A {@link SharedStringsStoreFactory} that keeps a number of pre-created stores ready, so that creating a
+ * {@link TempFileSharedStringsTable} does not wait for a temp file and a store to be set up. When a table is
+ * closed, its store is cleared on a background thread and reused; stores that do not support
+ * {@link SharedStringsStore#clear()} are closed on the background thread and replaced.
+ * <p>
+ * Use the pool with {@link SharedStringsConfig#storeFactory(SharedStringsStoreFactory)}, which can also be passed
+ * to {@link SXSSFFactory#sharedStringsConfig(SharedStringsConfig)}. The pool is thread-safe and should be shared
+ * by the tables of many workbooks. Close the pool when it is no longer needed.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public class SharedStringsStorePool implements SharedStringsStoreFactory, Closeable {
+
+    private final SharedStringsStoreFactory storeFactory;
+    private final boolean encryptTempFiles;
+    private final StorePool<SharedStringsStore> pool;
+
+    /**
+     * @param storeFactory creates the pooled stores
+     * @param encryptTempFiles whether the pooled stores encrypt their temp files; stores that are requested
+     *                         with a different setting are created by <code>storeFactory</code> and not pooled
+     * @param size the number of idle stores to keep ready
+     */
+    public SharedStringsStorePool(SharedStringsStoreFactory storeFactory, boolean encryptTempFiles, int size) {
+        this.storeFactory = storeFactory;
+        this.encryptTempFiles = encryptTempFiles;
+        this.pool = new StorePool<>("poi-shared-strings-store-pool", () -> storeFactory.create(encryptTempFiles),
+                SharedStringsStore::clear, size);
+    }
+
+    @Override
+    public SharedStringsStore create(boolean encryptTempFiles) {
+        if (encryptTempFiles != this.encryptTempFiles) {
+            return storeFactory.create(encryptTempFiles);
+        }
+        return new PooledStore(pool.acquire(), pool);
+    }
+
+    /**
+     * @return the number of stores that are ready for use
+     */
+    public int getIdleCount() {
+        return pool.getIdleCount();
+    }
+
+    /**
+     * Closes the idle stores and stops the background thread. Stores that are in use are closed when their
+     * tables are closed.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private static final class PooledStore implements SharedStringsStore {
+
+        private final SharedStringsStore store;
+        private final StorePool<SharedStringsStore> pool;
+        private boolean closed;
+
+        PooledStore(SharedStringsStore store, StorePool<SharedStringsStore> pool) {
+            this.store = store;
+            this.pool = pool;
+        }
+
+        @Override
+        public Object get(int idx) {
+            return store.get(idx);
+        }
+
+        @Override
+        public void put(int idx, Object entry) {
+            store.put(idx, entry);
+        }
+
+        @Override
+        public int find(String key, Object entry) {
+            return store.find(key, entry);
+        }
+
+        @Override
+        public void add(String key, Object entry, int idx) {
+            store.add(key, entry, idx);
+        }
+
+        @Override
+        public void putAll(int firstIdx, String[] keys, Object[] entries) {
+            store.putAll(firstIdx, keys, entries);
+        }
+
+        @Override
+        public void freeze() {
+            store.freeze();
+        }
+
+        @Override
+        public boolean clear() {
+            return store.clear();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pool.release(store);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Identifies a sheet that is read by a {@link ParallelSheetReader}.
+ *
+ * @since v2.3.0
+ */
+public class SheetInfo {
+
+    private final int index;
+    private final String name;
+
+    SheetInfo(int index, String name) {
+        this.index = index;
+        this.name = name;
+    }
+
+    /**
+     * @return the 0-based index of the sheet in the workbook
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the name of the sheet
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [index=" + index + "]";
+    }
+}
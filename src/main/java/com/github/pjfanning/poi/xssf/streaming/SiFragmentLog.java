@@ -0,0 +1,234 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Append-only temp file segment with the {@code <si>} XML of each shared string entry, in index order. The XML
+ * is written when the entry is added, so the body of the saved {@code <sst>} part is a copy of the segment
+ * instead of a serialization of every entry. The copy is only zero-copy (<code>FileChannel.transferTo</code>)
+ * when the target is a plain <code>FileOutputStream</code> and the segment is not encrypted. Other targets, such
+ * as the zip entry stream of a workbook save, get large blocks that are read (and decrypted) in direct buffers.
+ * <p>
+ * When encryption is enabled, the segment is encrypted with AES/CTR using a random key that is only held
+ * in memory. The blocks are encrypted and decrypted in place, as one continuous key stream.
+ * </p>
+ */
+class SiFragmentLog implements Closeable {
+
+    static final int BLOCK_SIZE = 1024 * 1024;
+
+    private File tempFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private Writer writer;
+    private final SecretKeySpec key;
+    private final IvParameterSpec iv;
+    private final Cipher encryptCipher;
+    private long length;
+    private int size;
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     */
+    SiFragmentLog(boolean encryptTempFiles) {
+        try {
+            if (encryptTempFiles) {
+                byte[] keyBytes = new byte[16];
+                Constants.RANDOM.nextBytes(keyBytes);
+                byte[] ivBytes = new byte[16];
+                Constants.RANDOM.nextBytes(ivBytes);
+                key = new SecretKeySpec(keyBytes, "AES");
+                iv = new IvParameterSpec(ivBytes);
+                encryptCipher = cipher(Cipher.ENCRYPT_MODE);
+            } else {
+                key = null;
+                iv = null;
+                encryptCipher = null;
+            }
+            tempFile = TempFile.createTempFile("poi-shared-strings-si", ".tmp");
+            raf = new RandomAccessFile(tempFile, "rw");
+            channel = raf.getChannel();
+            writer = new BufferedWriter(new OutputStreamWriter(new SegmentOutputStream(), StandardCharsets.UTF_8),
+                    64 * 1024);
+        } catch (Error | RuntimeException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends the {@code <si>} XML of the next entry.
+     *
+     * @param key the dedup key of the entry (for formatted entries, this is the {@code <si>} XML)
+     * @param entry the entry (a <code>String</code> or a <code>CTRst</code>)
+     */
+    void append(String key, Object entry) {
+        try {
+            if (entry instanceof String) {
+                TextSerializer.writeSi(writer, (String) entry);
+            } else {
+                writer.write(key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        size++;
+    }
+
+    /**
+     * @return the number of appended entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the {@code <si>} XML of all the appended entries. Only an unencrypted copy to a plain
+     * <code>FileOutputStream</code> is zero-copy; other streams receive the data in blocks.
+     *
+     * @param out the stream to copy to
+     * @throws IOException if an error occurs while copying
+     */
+    void copyTo(OutputStream out) throws IOException {
+        writer.flush();
+        if (key == null && out instanceof FileOutputStream) {
+            // zero-copy: the data does not pass through the Java heap
+            out.flush();
+            FileChannel target = ((FileOutputStream) out).getChannel();
+            long pos = 0;
+            while (pos < length) {
+                pos += channel.transferTo(pos, length - pos, target);
+            }
+            return;
+        }
+        Cipher decryptCipher = key == null ? null : cipher(Cipher.DECRYPT_MODE);
+        // a FileOutputStream target writes the direct buffers without copying them into the heap
+        WritableByteChannel target = Channels.newChannel(out);
+        int blockSize = (int) Math.min(BLOCK_SIZE, Math.max(length, 1));
+        ByteBuffer bb = ByteBuffer.allocateDirect(blockSize);
+        ByteBuffer decrypted = decryptCipher == null ? bb : ByteBuffer.allocateDirect(blockSize);
+        long pos = 0;
+        while (pos < length) {
+            bb.clear();
+            if (length - pos < bb.capacity()) {
+                bb.limit((int) (length - pos));
+            }
+            while (bb.hasRemaining()) {
+                int read = channel.read(bb, pos + bb.position());
+                if (read < 0) {
+                    throw new IOException("Unexpected end of shared strings temp file");
+                }
+            }
+            pos += bb.position();
+            bb.flip();
+            if (decryptCipher != null) {
+                decrypted.clear();
+                update(decryptCipher, bb, decrypted);
+                decrypted.flip();
+            }
+            while (decrypted.hasRemaining()) {
+                target.write(decrypted);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (tempFile != null) tempFile.delete();
+    }
+
+    private Cipher cipher(int mode) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(mode, key, iv);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to initialise shared strings temp file cipher", e);
+        }
+    }
+
+    private static void update(Cipher cipher, ByteBuffer input, ByteBuffer output) throws IOException {
+        try {
+            cipher.update(input, output);
+        } catch (ShortBufferException e) {
+            throw new IOException("Failed to decrypt shared strings temp file data", e);
+        }
+    }
+
+    private static void update(Cipher cipher, byte[] buf, int len) throws IOException {
+        try {
+            cipher.update(buf, 0, len, buf, 0);
+        } catch (ShortBufferException e) {
+            throw new IOException("Failed to encrypt shared strings temp file data", e);
+        }
+    }
+
+    /**
+     * Collects the written bytes in blocks and appends each block to the segment.
+     */
+    private class SegmentOutputStream extends OutputStream {
+        private final byte[] buf = new byte[BLOCK_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length) {
+                flushBlock();
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buf.length) {
+                    flushBlock();
+                }
+                int n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBlock();
+        }
+
+        private void flushBlock() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (encryptCipher != null) {
+                update(encryptCipher, buf, count);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, count);
+            while (bb.hasRemaining()) {
+                length += channel.write(bb, length);
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.function.Function;
+
+/**
+ * Shared strings storage that starts in heap and moves to a disk-backed store once the number of entries
+ * or their estimated size passes a threshold. Small workbooks never pay for creating a temp file. The
+ * entries keep their indexes when they are moved.
+ */
+class SpillingSharedStringsStore implements SharedStringsStore {
+
+    private final int maxHeapEntries;
+    private final long maxHeapBytes;
+    private final SharedStringsStoreFactory diskStoreFactory;
+    private final boolean encryptTempFiles;
+    private final Function<Object, String> keyFunction;
+    private SharedStringsStore store = new InHeapSharedStringsStore();
+    private int size;
+    private long heapBytes;
+    private boolean spilled;
+
+    /**
+     * @param maxHeapEntries the number of entries that are held in heap before moving to the disk store
+     * @param maxHeapBytes the estimated size of the entries (and their keys) that are held in heap before
+     *                     moving to the disk store
+     * @param diskStoreFactory creates the disk store
+     * @param encryptTempFiles whether the disk store should encrypt its temp files
+     * @param keyFunction computes the dedup key of a stored entry
+     */
+    SpillingSharedStringsStore(int maxHeapEntries, long maxHeapBytes, SharedStringsStoreFactory diskStoreFactory,
+                               boolean encryptTempFiles, Function<Object, String> keyFunction) {
+        this.maxHeapEntries = maxHeapEntries;
+        this.maxHeapBytes = maxHeapBytes;
+        this.diskStoreFactory = diskStoreFactory;
+        this.encryptTempFiles = encryptTempFiles;
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public Object get(int idx) {
+        return store.get(idx);
+    }
+
+    @Override
+    public void put(int idx, Object entry) {
+        store.put(idx, entry);
+        size = Math.max(size, idx + 1);
+        if (!spilled) {
+            heapBytes += RichTextCodec.getEntryMemory(entry);
+            if (size > maxHeapEntries || heapBytes > maxHeapBytes) {
+                spill();
+            }
+        }
+    }
+
+    @Override
+    public int find(String key, Object entry) {
+        return store.find(key, entry);
+    }
+
+    @Override
+    public void add(String key, Object entry, int idx) {
+        store.add(key, entry, idx);
+        if (!spilled) {
+            heapBytes += 2L * key.length();
+        }
+    }
+
+    @Override
+    public void putAll(int firstIdx, String[] keys, Object[] entries) {
+        if (spilled) {
+            store.putAll(firstIdx, keys, entries);
+            size = Math.max(size, firstIdx + entries.length);
+        } else {
+            SharedStringsStore.super.putAll(firstIdx, keys, entries);
+        }
+    }
+
+    @Override
+    public void freeze() {
+        store.freeze();
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * @return whether the entries have been moved to the disk store
+     */
+    boolean isSpilled() {
+        return spilled;
+    }
+
+    private void spill() {
+        SharedStringsStore heapStore = store;
+        SharedStringsStore diskStore = diskStoreFactory.create(encryptTempFiles);
+        try {
+            for (int idx = 0; idx < size; idx++) {
+                Object entry = heapStore.get(idx);
+                String key = keyFunction.apply(entry);
+                // only index the entries that were indexed in heap (not all the entries are, eg with DedupPolicy.NONE)
+                if (heapStore.find(key, entry) == idx) {
+                    diskStore.add(key, entry, idx);
+                }
+                diskStore.put(idx, entry);
+            }
+        } catch (Error | RuntimeException e) {
+            diskStore.close();
+            throw e;
+        }
+        store = diskStore;
+        spilled = true;
+        heapStore.close();
+    }
+}
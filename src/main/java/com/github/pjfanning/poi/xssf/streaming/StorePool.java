@@ -0,0 +1,156 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a number of idle stores ready for use. Creating, clearing and closing stores is done on a background
+ * thread, so that taking a store from the pool and giving it back is cheap for the calling thread. Stores are
+ * only added to the pool on the background thread, so the pool never holds more than <code>maxIdle</code> stores.
+ */
+class StorePool<S extends Closeable> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StorePool.class);
+
+    private final Supplier<S> storeFactory;
+    private final Predicate<S> clearFunction;
+    private final int maxIdle;
+    private final BlockingQueue<S> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * @param name the name of the background thread
+     * @param storeFactory creates new stores
+     * @param clearFunction clears a store for reuse, returns false if the store cannot be reused
+     * @param maxIdle the number of idle stores to keep ready
+     */
+    StorePool(String name, Supplier<S> storeFactory, Predicate<S> clearFunction, int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.storeFactory = storeFactory;
+        this.clearFunction = clearFunction;
+        this.maxIdle = maxIdle;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < maxIdle; i++) {
+            refill();
+        }
+    }
+
+    /**
+     * @return an idle store, or a new store if there is none
+     */
+    S acquire() {
+        S store = idle.poll();
+        refill();
+        return store == null ? storeFactory.get() : store;
+    }
+
+    /**
+     * Clears the store on the background thread and keeps it for reuse, or closes it if the pool is full.
+     *
+     * @param store a store returned by {@link #acquire()}
+     */
+    void release(S store) {
+        if (!closed) {
+            try {
+                executor.execute(() -> {
+                    if (!closed && idle.size() < maxIdle && clearStore(store)) {
+                        idle.add(store);
+                    } else {
+                        closeStore(store);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // the pool was closed in the meantime
+            }
+        }
+        closeStore(store);
+    }
+
+    /**
+     * @return the number of idle stores
+     */
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes the idle stores. Stores that are in use are closed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Timed out waiting for the store pool thread to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        S store;
+        while ((store = idle.poll()) != null) {
+            closeStore(store);
+        }
+    }
+
+    private void refill() {
+        if (closed || idle.size() + pending.get() >= maxIdle) {
+            return;
+        }
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    // released stores may have filled the pool in the meantime
+                    if (!closed && idle.size() < maxIdle) {
+                        idle.add(storeFactory.get());
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Failed to create store for pool", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+        }
+    }
+
+    private boolean clearStore(S store) {
+        try {
+            return clearFunction.test(store);
+        } catch (RuntimeException e) {
+            log.warn("Failed to clear pooled store", e);
+            return false;
+        }
+    }
+
+    private static void closeStore(Closeable store) {
+        try {
+            store.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to close pooled store", e);
+        }
+    }
+}
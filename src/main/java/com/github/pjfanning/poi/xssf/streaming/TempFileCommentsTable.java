@@ -5,25 +5,18 @@ import org.apache.poi.ooxml.POIXMLDocumentPart;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.util.CellAddress;
-import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.model.Comments;
 import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFRelation;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
-import org.h2.mvstore.MVMap;
-import org.h2.mvstore.MVStore;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCommentList;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.CommentsDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -42,12 +35,8 @@ import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
 public class TempFileCommentsTable extends POIXMLDocumentPart implements Comments, AutoCloseable {
     private static Logger log = LoggerFactory.getLogger(TempFileCommentsTable.class);
 
-    private File tempFile;
-    private MVStore mvStore;
-
     private final boolean fullFormat;
-    private final MVMap<String, SerializableComment> comments;
-    private final MVMap<Integer, String> authors;
+    private final CommentsStore store;
 
     private static final XmlOptions textSaveOptions = new XmlOptions(Constants.saveOptions);
     static {
@@ -64,29 +53,19 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
     }
 
     public TempFileCommentsTable(boolean encryptTempFiles, boolean fullFormat) {
+        this(encryptTempFiles, fullFormat, CommentsStoreFactory.mvStore());
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to keep the formatting of the comments
+     * @param storeFactory creates the storage engine for the comments
+     * @since v2.3.0
+     */
+    public TempFileCommentsTable(boolean encryptTempFiles, boolean fullFormat, CommentsStoreFactory storeFactory) {
         super();
         this.fullFormat = fullFormat;
-        try {
-            tempFile = TempFile.createTempFile("poi-comments", ".tmp");
-            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
-            if (encryptTempFiles) {
-                byte[] bytes = new byte[1024];
-                Constants.RANDOM.nextBytes(bytes);
-                mvStoreBuilder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
-            }
-            mvStoreBuilder.fileName(tempFile.getAbsolutePath());
-            mvStore = mvStoreBuilder.open();
-            comments = mvStore.openMap("comments");
-            authors = mvStore.openMap("authors");
-        } catch (Error | RuntimeException e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null) tempFile.delete();
-            throw e;
-        } catch (Exception e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null) tempFile.delete();
-            throw new RuntimeException(e);
-        }
+        this.store = storeFactory.create(encryptTempFiles);
     }
 
     public TempFileCommentsTable(OPCPackage pkg, boolean encryptTempFiles) throws IOException {
@@ -95,7 +74,20 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
 
     public TempFileCommentsTable(OPCPackage pkg, boolean encryptTempFiles,
                                  boolean fullFormat) throws IOException {
-        this(encryptTempFiles, fullFormat);
+        this(pkg, encryptTempFiles, fullFormat, CommentsStoreFactory.mvStore());
+    }
+
+    /**
+     * @param pkg the package to read the comments from
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to keep the formatting of the comments
+     * @param storeFactory creates the storage engine for the comments
+     * @throws IOException if an error occurs while reading the comments
+     * @since v2.3.0
+     */
+    public TempFileCommentsTable(OPCPackage pkg, boolean encryptTempFiles,
+                                 boolean fullFormat, CommentsStoreFactory storeFactory) throws IOException {
+        this(encryptTempFiles, fullFormat, storeFactory);
         ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHEET_COMMENTS.getContentType());
         if (parts.size() > 0) {
             PackagePart sstPart = parts.get(0);
@@ -119,38 +111,34 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
      */
     public void readFrom(InputStream is) throws IOException {
         try {
-            XMLEventReader xmlEventReader = Constants.XML_INPUT_FACTORY.createXMLEventReader(is);
+            XMLStreamReader xmlStreamReader = Constants.XML_INPUT_FACTORY.createXMLStreamReader(is);
             try {
-                while(xmlEventReader.hasNext()) {
-                    XMLEvent xmlEvent = xmlEventReader.nextEvent();
-
-                    if (xmlEvent.isStartElement()) {
-                        StartElement se = xmlEvent.asStartElement();
-                        if (se.getName().getLocalPart().equals("author")) {
-                            authors.put(getNumberOfAuthors(), xmlEventReader.getElementText());
-                        } else if (se.getName().getLocalPart().equals("comment")) {
-                            String ref = se.getAttributeByName(new QName("ref")).getValue();
-                            String authorId = se.getAttributeByName(new QName("authorId")).getValue();
+                StringBuilder buf = new StringBuilder();
+                while(xmlStreamReader.hasNext()) {
+                    if (xmlStreamReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        String localName = xmlStreamReader.getLocalName();
+                        if (localName.equals("author")) {
+                            store.putAuthor(getNumberOfAuthors(), xmlStreamReader.getElementText());
+                        } else if (localName.equals("comment")) {
+                            String ref = xmlStreamReader.getAttributeValue(null, "ref");
+                            String authorId = xmlStreamReader.getAttributeValue(null, "authorId");
                             XSSFRichTextString str;
                             if (fullFormat) {
-                                try {
-                                    str = parseFullComment(xmlEventReader);
-                                } catch (XmlException e) {
-                                    throw new IOException("Failed to parse comment", e);
-                                }
+                                str = parseFullComment(xmlStreamReader);
                             } else {
-                                str = new XSSFRichTextString(parseSimplifiedComment(xmlEventReader));
+                                str = new XSSFRichTextString(parseSimplifiedComment(xmlStreamReader, buf));
                             }
                             SerializableComment xc = new SerializableComment();
                             xc.setAddress(new CellAddress(ref));
-                            xc.setAuthor(authors.get(Integer.parseInt(authorId)));
+                            xc.setAuthorId(Integer.parseInt(authorId));
+                            xc.setAuthor(store.getAuthor(xc.getAuthorId()));
                             xc.setString(str);
-                            comments.put(ref, xc);
+                            store.putComment(ref, xc);
                         }
                     }
                 }
             } finally {
-                xmlEventReader.close();
+                xmlStreamReader.close();
             }
         } catch (XMLStreamException xse) {
             throw new IOException("Failed to parse comments", xse);
@@ -159,25 +147,24 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
 
     @Override
     public int getNumberOfComments() {
-        return comments.size();
+        return store.getNumberOfComments();
     }
 
     @Override
     public int getNumberOfAuthors() {
-        return authors.size();
+        return store.getNumberOfAuthors();
     }
 
     @Override
     public String getAuthor(long authorId) {
-        return authors.get((int)authorId);
+        return store.getAuthor((int)authorId);
     }
 
     @Override
     public int findAuthor(String author) {
-        Iterator<Integer> authorIdIterator = authors.keyIterator(null);
-        while (authorIdIterator.hasNext()) {
-            Integer authorId = authorIdIterator.next();
-            String existingAuthor = authorId == null ? null : authors.get(authorId);
+        int numberOfAuthors = getNumberOfAuthors();
+        for (int authorId = 0; authorId < numberOfAuthors; authorId++) {
+            String existingAuthor = store.getAuthor(authorId);
             if (existingAuthor == null) {
                 if (author == null) {
                     return authorId;
@@ -188,17 +175,25 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
                 }
             }
         }
-        int index = getNumberOfAuthors();
-        authors.put(index, author);
-        return index;
+        store.putAuthor(numberOfAuthors, author);
+        return numberOfAuthors;
     }
 
     @Override
     public XSSFComment findCellComment(CellAddress cellAddress) {
-        SerializableComment comment = comments.get(cellAddress.formatAsString());
+        SerializableComment comment = getComment(cellAddress.formatAsString());
         return comment == null ? null : new ReadOnlyXSSFComment(comment);
     }
 
+    private SerializableComment getComment(String ref) {
+        SerializableComment comment = store.getComment(ref);
+        if (comment != null && comment.getAuthor() == null && comment.getAuthorId() >= 0) {
+            //only the author id is stored in the temp file
+            comment.setAuthor(store.getAuthor(comment.getAuthorId()));
+        }
+        return comment;
+    }
+
     /**
      * Not implemented. This class only supports read-only view of Comments.
      * @throws IllegalStateException
@@ -210,7 +205,7 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
 
     @Override
     public Iterator<CellAddress> getCellAddresses() {
-        final Iterator<String> keyIterator = comments.keyIterator(null);
+        final Iterator<String> keyIterator = store.getCommentRefs();
         return new Iterator<CellAddress>() {
             @Override
             public boolean hasNext() {
@@ -226,8 +221,7 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
 
     @Override
     public void close() {
-        if(mvStore != null) mvStore.closeImmediately();
-        if(tempFile != null) tempFile.delete();
+        store.close();
     }
 
     /**
@@ -242,24 +236,24 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
             writer.write("<comments xmlns=\"");
             writer.write(NS_SPREADSHEETML);
             writer.write("\"><authors>");
-            Iterator<Integer> authorIdIterator = authors.keyIterator(null);
-            while (authorIdIterator.hasNext()) {
-                Integer authorId = authorIdIterator.next();
-                String author = authorId == null ? null : authors.get(authorId);
+            int numberOfAuthors = getNumberOfAuthors();
+            for (int authorId = 0; authorId < numberOfAuthors; authorId++) {
+                String author = store.getAuthor(authorId);
                 writer.write("<author>");
                 writer.write(StringEscapeUtils.escapeXml11(author));
                 writer.write("</author>");
             }
             writer.write("</authors>");
             writer.write("<commentList>");
-            Iterator<String> commentsRefIterator = comments.keyIterator(null);
+            Iterator<String> commentsRefIterator = store.getCommentRefs();
             while (commentsRefIterator.hasNext()) {
-                SerializableComment comment = comments.get(commentsRefIterator.next());
+                SerializableComment comment = getComment(commentsRefIterator.next());
                 if (comment != null) {
                     writer.write("<comment ref=\"");
                     writer.write(StringEscapeUtils.escapeXml11(comment.getAddress().formatAsString()));
                     writer.write("\" authorId=\"");
-                    writer.write(Integer.toString(findAuthor(comment.getAuthor())));
+                    int authorId = comment.getAuthorId() >= 0 ? comment.getAuthorId() : findAuthor(comment.getAuthor());
+                    writer.write(Integer.toString(authorId));
                     writer.write("\">");
                     XSSFRichTextString rts = comment.getString();
                     if (rts != null) {
@@ -283,25 +277,17 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
     }
 
     /**
-     * Parses a {@code <comment>} Comment. Uses POI/XMLBeans classes to parse full comment XML.
+     * Parses a {@code <comment>} Comment and keeps the formatting of the text.
      */
-    private XSSFRichTextString parseFullComment(XMLEventReader xmlEventReader) throws IOException, XmlException, XMLStreamException {
+    private XSSFRichTextString parseFullComment(XMLStreamReader xmlStreamReader) throws XMLStreamException {
         // Precondition: pointing to <comment>;  Post condition: pointing to </comment>
-        XMLEvent xmlEvent;
         XSSFRichTextString richTextString = null;
-        while((xmlEvent = xmlEventReader.nextTag()).isStartElement()) {
-            StartElement startElement = xmlEvent.asStartElement();
-            QName startTag = startElement.getName();
-            switch(startTag.getLocalPart()) {
-                case "text":
-                    List<String> tags = Arrays.asList(new String[]{"comments", "commentList", "comment", "text"});
-                    String text = TextParser.getXMLText(xmlEventReader, startTag, tags);
-                    CTCommentList commentsList = CommentsDocument.Factory.parse(text).getComments().getCommentList();
-                    richTextString = new XSSFRichTextString(commentsList.getCommentArray(0).getText());
-                    break;
-                default:
-                    log.debug("ignoring data inside element {}", startElement.getName());
-                    break;
+        while(xmlStreamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (xmlStreamReader.getLocalName().equals("text")) {
+                richTextString = new XSSFRichTextString(TextParser.parseFullCT_Rst(xmlStreamReader));
+            } else {
+                log.debug("ignoring data inside element {}", xmlStreamReader.getName());
+                TextParser.skipElement(xmlStreamReader);
             }
         }
         return richTextString;
@@ -310,19 +296,15 @@ public class TempFileCommentsTable extends POIXMLDocumentPart implements Comment
     /**
      * Parses a {@code <comment>} Comment. Returns just the text and drops the formatting.
      */
-    private String parseSimplifiedComment(XMLEventReader xmlEventReader) throws XMLStreamException {
+    private String parseSimplifiedComment(XMLStreamReader xmlStreamReader, StringBuilder buf) throws XMLStreamException {
         // Precondition: pointing to <comment>;  Post condition: pointing to </comment>
-        XMLEvent xmlEvent;
         String text = null;
-        while((xmlEvent = xmlEventReader.nextTag()).isStartElement()) {
-            StartElement startElement = xmlEvent.asStartElement();
-            switch(startElement.getName().getLocalPart()) {
-                case "text":
-                    text = TextParser.parseCT_Rst(xmlEventReader);
-                    break;
-                default:
-                    log.debug("ignoring data inside element {}", startElement.getName());
-                    break;
+        while(xmlStreamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (xmlStreamReader.getLocalName().equals("text")) {
+                text = TextParser.parseCT_Rst(xmlStreamReader, buf);
+            } else {
+                log.debug("ignoring data inside element {}", xmlStreamReader.getName());
+                TextParser.skipElement(xmlStreamReader);
             }
         }
         return text;
@@ -0,0 +1,37 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A random AES key for encrypting temp files, that is only held in memory. Generating a key is cheap, but
+ * a key can also be shared by all the tables of one workbook with {@link MVStoreConfig#encryptionKey(TempFileEncryptionKey)}.
+ * Each temp file still uses its own random nonce, so no two files encrypt their data with the same tweaks.
+ *
+ * @since v2.3.0
+ */
+public final class TempFileEncryptionKey {
+
+    private final SecretKeySpec key;
+
+    private TempFileEncryptionKey(SecretKeySpec key) {
+        this.key = key;
+    }
+
+    /**
+     * @return a new random 128-bit AES key
+     */
+    public static TempFileEncryptionKey generate() {
+        byte[] keyBytes = new byte[16];
+        Constants.RANDOM.nextBytes(keyBytes);
+        return new TempFileEncryptionKey(new SecretKeySpec(keyBytes, "AES"));
+    }
+
+    SecretKeySpec getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "TempFileEncryptionKey";
+    }
+}
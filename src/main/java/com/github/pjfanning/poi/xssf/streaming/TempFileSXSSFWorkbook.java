@@ -0,0 +1,119 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <code>SXSSFWorkbook</code> that adds the values of string cells to its {@link TempFileSharedStringsTable}
+ * as plain <code>String</code>s. <code>SXSSFWorkbook</code> wraps every string cell value in a new
+ * <code>XSSFRichTextString</code> (and its XMLBeans <code>CTRst</code>) before adding it to the shared strings
+ * table; this workbook skips that. The saved workbook is the same.
+ * <p>
+ * Use {@link SXSSFFactory#createSXSSFWorkbook(int, boolean)} or pass an <code>XSSFWorkbook</code> that was
+ * created with an {@link SXSSFFactory}. Workbooks that do not use a <code>TempFileSharedStringsTable</code>
+ * behave like a normal <code>SXSSFWorkbook</code>.
+ * </p>
+ * <p>
+ * When the shared strings table has {@link SharedStringsConfig#compactOnWrite(boolean)} enabled, saving the
+ * workbook drops the unused shared strings, orders them by use and remaps the string cells to the new indexes.
+ * </p>
+ *
+ * @since v2.3.0
+ */
+public class TempFileSXSSFWorkbook extends SXSSFWorkbook {
+
+    /**
+     *  New index of each shared string while the workbook is saved with compaction (null otherwise)
+     */
+    private int[] sharedStringsRemap;
+
+    /**
+     * @param workbook the template workbook (create it with <code>new XSSFWorkbook(sxssfFactory)</code>)
+     * @param rowAccessWindowSize the number of rows that are kept in memory until flushed out
+     * @param compressTmpFiles whether to use gzip compression for the temp sheet files
+     * @param useSharedStringTable whether to use a shared strings table for string cells
+     */
+    public TempFileSXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize,
+                                 boolean compressTmpFiles, boolean useSharedStringTable) {
+        super(workbook, rowAccessWindowSize, compressTmpFiles, useSharedStringTable);
+    }
+
+    @Override
+    protected SheetDataWriter createSheetDataWriter() throws IOException {
+        SharedStringsTable sharedStringsTable = getSharedStringSource();
+        if (sharedStringsTable instanceof TempFileSharedStringsTable) {
+            TempFileSharedStringsTable table = (TempFileSharedStringsTable) sharedStringsTable;
+            return isCompressTempFiles() ?
+                    new TempFileSheetDataWriter.GZIP(table) : new TempFileSheetDataWriter(table);
+        }
+        return super.createSheetDataWriter();
+    }
+
+    @Override
+    public void write(OutputStream stream) throws IOException {
+        TempFileSharedStringsTable table = startCompaction();
+        try {
+            super.write(stream);
+        } finally {
+            endCompaction(table);
+        }
+    }
+
+    @Override
+    public void writeAvoidingTempFiles(OutputStream stream) throws IOException {
+        TempFileSharedStringsTable table = startCompaction();
+        try {
+            super.writeAvoidingTempFiles(stream);
+        } finally {
+            endCompaction(table);
+        }
+    }
+
+    @Override
+    protected ISheetInjector createSheetInjector(SXSSFSheet sheet) throws IOException {
+        int[] remap = sharedStringsRemap;
+        if (remap == null) {
+            return super.createSheetInjector(sheet);
+        }
+        SharedStringsRemapper remapper = new SharedStringsRemapper(remap);
+        return out -> {
+            try (InputStream xis = sheet.getWorksheetXMLInputStream()) {
+                remapper.copy(xis, out);
+            }
+        };
+    }
+
+    /**
+     * @return the table that will write compacted shared strings, or null if there is no compaction
+     */
+    private TempFileSharedStringsTable startCompaction() {
+        SharedStringsTable sharedStringsTable = getSharedStringSource();
+        if (!(sharedStringsTable instanceof TempFileSharedStringsTable)) {
+            return null;
+        }
+        for (Sheet sheet : getXSSFWorkbook()) {
+            if (sheet.getPhysicalNumberOfRows() > 0) {
+                // the rows of the template are not written by the sheet data writers and are not remapped
+                return null;
+            }
+        }
+        TempFileSharedStringsTable table = (TempFileSharedStringsTable) sharedStringsTable;
+        sharedStringsRemap = table.compact();
+        return sharedStringsRemap == null ? null : table;
+    }
+
+    private void endCompaction(TempFileSharedStringsTable table) {
+        sharedStringsRemap = null;
+        if (table != null) {
+            table.endCompaction();
+        }
+    }
+}
@@ -3,29 +3,26 @@ package com.github.pjfanning.poi.xssf.streaming;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.usermodel.RichTextString;
-import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.usermodel.XSSFRelation;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
-import org.h2.mvstore.MVMap;
-import org.h2.mvstore.MVStore;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSst;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.SstDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
 
@@ -52,21 +49,83 @@ import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
  */
 public class TempFileSharedStringsTable extends SharedStringsTable {
     private static final Logger log = LoggerFactory.getLogger(TempFileSharedStringsTable.class);
-    private static final QName COUNT_QNAME = new QName("count");
-    private static final QName UNIQUE_COUNT_QNAME = new QName("uniqueCount");
-    private File tempFile;
-    private MVStore mvStore;
     private final boolean fullFormat;
 
     /**
-     *  Array of individual string items in the Shared String table.
+     *  Storage for the individual string items in the Shared String table, and the index used to find
+     *  duplicates. Entries without any formatting are stored as plain <code>String</code>s, all other
+     *  entries are stored as <code>CTRst</code> instances.
      */
-    private final MVMap<Integer, CTRst> strings;
+    private final SharedStringsStore store;
 
     /**
-     *  Maps strings and their indexes in the <code>strings</code> arrays
+     *  Optional in-heap cache of recently read entries (null if disabled)
      */
-    private final MVMap<String, Integer> stmap;
+    private final SegmentedLruCache<Integer, Object> cache;
+    private final int cacheMaxEntries;
+
+    /**
+     *  Set by freeze(); after that the table is read-only and getItemAt is safe to call from multiple threads
+     */
+    private volatile boolean frozen;
+
+    /**
+     *  Lock-free cache that replaces the in-heap cache when the table is frozen (null if the cache is disabled)
+     */
+    private ConcurrentEntryCache frozenCache;
+
+    private final boolean pipelinedLoading;
+
+    private final DedupPolicy dedupPolicy;
+
+    private final boolean parallelWrite;
+    private final Executor parallelWriteExecutor;
+    private final int parallelWriteChunkSize;
+    private final int parallelWriteMaxChunksInFlight;
+
+    /**
+     *  Recently and frequently added keys and their indexes, used by the BOUNDED dedup policy (null otherwise)
+     */
+    private final SegmentedLruCache<String, Integer> dedupWorkingSet;
+
+    /**
+     *  Number of cell references to each entry, counted by TempFileSXSSFWorkbook (null if compactOnWrite is disabled)
+     */
+    private int[] referenceCounts;
+    private long referenceTotal;
+
+    /**
+     *  Old index of each entry in the order that the next writeTo writes them (null if not compacting)
+     */
+    private int[] compactedOrder;
+
+    private final boolean encryptTempFiles;
+    private final boolean lazyLoading;
+
+    /**
+     *  Index over the raw shared strings part, when it was loaded lazily (null if the entries are in the store)
+     */
+    private LazySstIndex lazyIndex;
+
+    /**
+     *  Optional log of the {@code <si>} XML of each entry, used by writeTo (null if disabled)
+     */
+    private final SiFragmentLog fragments;
+
+    /**
+     *  Guards the store while a pipelined load writes to it from another thread
+     */
+    private final Object storeLock = new Object();
+    private volatile boolean loading;
+    private volatile int storedCount;
+
+    /**
+     *  Prefix for the dedup keys of plain text entries. The keys of formatted entries are
+     *  XML and always start with '&lt;' so the two cannot clash.
+     */
+    private static final String PLAIN_KEY_PREFIX = "t:";
+
+    private static final int BULK_BATCH_SIZE = 4096;
 
     private static final XmlOptions siSaveOptions = new XmlOptions(Constants.saveOptions);
     static {
@@ -83,29 +142,43 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
     }
 
     public TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat) {
+        this(encryptTempFiles, fullFormat, new SharedStringsConfig());
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to keep the formatting of the shared strings (default is false)
+     * @param config optional settings for this table
+     * @since v2.3.0
+     */
+    public TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat, SharedStringsConfig config) {
         super();
         this.fullFormat = fullFormat;
-        try {
-            tempFile = TempFile.createTempFile("poi-shared-strings", ".tmp");
-            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
-            if (encryptTempFiles) {
-                byte[] bytes = new byte[1024];
-                Constants.RANDOM.nextBytes(bytes);
-                mvStoreBuilder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
+        this.cacheMaxEntries = config.getCacheMaxEntries();
+        this.cache = config.getCacheMaxEntries() > 0 ?
+                new SegmentedLruCache<>(config.getCacheMaxEntries(), config.getCacheMaxBytes()) : null;
+        this.pipelinedLoading = config.isPipelinedLoading();
+        this.dedupPolicy = config.getDedupPolicy();
+        this.parallelWrite = config.isParallelWrite();
+        this.parallelWriteExecutor = config.getParallelWriteExecutor();
+        this.parallelWriteChunkSize = config.getParallelWriteChunkSize();
+        this.parallelWriteMaxChunksInFlight = config.getParallelWriteMaxChunksInFlight();
+        this.referenceCounts = config.isCompactOnWrite() ? new int[1024] : null;
+        this.dedupWorkingSet = dedupPolicy == DedupPolicy.BOUNDED ?
+                new SegmentedLruCache<>(config.getDedupWorkingSetSize(), Long.MAX_VALUE) : null;
+        this.encryptTempFiles = encryptTempFiles;
+        this.lazyLoading = config.isLazyLoading();
+        this.store = config.getStoreFactory().create(encryptTempFiles);
+        SiFragmentLog fragmentLog = null;
+        if (config.isPreSerializeEntries()) {
+            try {
+                fragmentLog = new SiFragmentLog(encryptTempFiles);
+            } catch (Error | RuntimeException e) {
+                store.close();
+                throw e;
             }
-            mvStoreBuilder.fileName(tempFile.getAbsolutePath());
-            mvStore = mvStoreBuilder.open();
-            strings = mvStore.openMap("strings");
-            stmap = mvStore.openMap("stmap");
-        } catch (Error | RuntimeException e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null) tempFile.delete();
-            throw e;
-        } catch (Exception e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null) tempFile.delete();
-            throw new RuntimeException(e);
         }
+        this.fragments = fragmentLog;
     }
 
     public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles) throws IOException {
@@ -114,7 +187,20 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
 
     public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles,
                                       boolean fullFormat) throws IOException {
-        this(encryptTempFiles, fullFormat);
+        this(pkg, encryptTempFiles, fullFormat, new SharedStringsConfig());
+    }
+
+    /**
+     * @param pkg the package to load the shared strings from
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to keep the formatting of the shared strings (default is false)
+     * @param config optional settings for this table
+     * @throws IOException if an error occurs while reading the shared strings
+     * @since v2.3.0
+     */
+    public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles,
+                                      boolean fullFormat, SharedStringsConfig config) throws IOException {
+        this(encryptTempFiles, fullFormat, config);
         ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
         if (parts.size() > 0) {
             PackagePart sstPart = parts.get(0);
@@ -130,75 +216,225 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
      */
     @Override
     public void readFrom(InputStream is) throws IOException {
+        checkNotFrozen();
+        materialize();
+        if (lazyLoading && uniqueCount == 0) {
+            if (!is.markSupported()) {
+                is = new BufferedInputStream(is);
+            }
+            // the lazy index scans the raw bytes, so parts with other encodings are parsed eagerly
+            if (LazySstIndex.isUtf8(is)) {
+                lazyIndex = new LazySstIndex(is, encryptTempFiles);
+                this.uniqueCount = lazyIndex.size();
+                this.count = lazyIndex.size();
+                setCounts(lazyIndex.getCount(), lazyIndex.getUniqueCount());
+                return;
+            }
+        }
         try {
             int uniqueCount = -1;
             int count = -1;
-            XMLEventReader xmlEventReader = Constants.XML_INPUT_FACTORY.createXMLEventReader(is);
+            // the cursor API avoids allocating event objects for every tag
+            XMLStreamReader xmlStreamReader = Constants.XML_INPUT_FACTORY.createXMLStreamReader(is);
+            LoadPipeline pipeline = null;
             try {
-                while(xmlEventReader.hasNext()) {
-                    XMLEvent xmlEvent = xmlEventReader.nextEvent();
-
-                    if (xmlEvent.isStartElement()) {
-                        StartElement startElement = xmlEvent.asStartElement();
-                        QName startTag = startElement.getName();
-                        String localPart = startTag.getLocalPart();
-                        if (localPart.equals("sst")) {
-                            try {
-                                Attribute countAtt = startElement.getAttributeByName(COUNT_QNAME);
-                                if (countAtt != null) {
-                                    count = Integer.parseInt(countAtt.getValue());
-                                }
-                            } catch (Exception e) {
-                                log.warn("Failed to parse SharedStringsTable count");
-                            }
-                            try {
-                                Attribute uniqueCountAtt = startElement.getAttributeByName(UNIQUE_COUNT_QNAME);
-                                if (uniqueCountAtt != null) {
-                                    uniqueCount = Integer.parseInt(uniqueCountAtt.getValue());
-                                }
-                            } catch (Exception e) {
-                                log.warn("Failed to parse SharedStringsTable uniqueCount");
-                            }
-                        } else if (localPart.equals("si")) {
-                            if (fullFormat) {
-                                List<String> tags = Arrays.asList(new String[]{"sst", "si"});
-                                String text = TextParser.getXMLText(xmlEventReader, startTag, tags);
-                                CTSst sst;
-                                try {
-                                    sst = SstDocument.Factory.parse(text).getSst();
-                                } catch (XmlException e) {
-                                    throw new IOException("Failed to parse shared string text", e);
-                                }
-                                addEntry(new XSSFRichTextString(sst.getSiArray(0)).getCTRst(), true);
+                if (pipelinedLoading) {
+                    storedCount = this.uniqueCount;
+                    loading = true;
+                    pipeline = new LoadPipeline("poi-shared-strings-loader", this::storeBatch);
+                }
+                StringBuilder buf = new StringBuilder();
+                while(xmlStreamReader.hasNext()) {
+                    if (xmlStreamReader.next() == XMLStreamConstants.START_ELEMENT) {
+                        String localName = xmlStreamReader.getLocalName();
+                        if (localName.equals("sst")) {
+                            count = parseCount(xmlStreamReader.getAttributeValue(null, "count"), "count");
+                            uniqueCount = parseCount(xmlStreamReader.getAttributeValue(null, "uniqueCount"), "uniqueCount");
+                        } else if (localName.equals("si")) {
+                            if (pipeline != null) {
+                                pipeline.add(fullFormat ? TextParser.parseFullCT_Rst(xmlStreamReader) :
+                                        TextParser.parseCT_Rst(xmlStreamReader, buf));
+                            } else if (fullFormat) {
+                                addEntry(TextParser.parseFullCT_Rst(xmlStreamReader), true);
                             } else {
-                                String text = TextParser.parseCT_Rst(xmlEventReader);
-                                addEntry(new XSSFRichTextString(text).getCTRst(), true);
+                                addPlainEntry(TextParser.parseCT_Rst(xmlStreamReader, buf), true);
                             }
                         }
                     }
                 }
-                if (count > -1) {
-                    this.count = count;
-                }
-                if (uniqueCount > -1) {
-                    if (uniqueCount != this.uniqueCount) {
-                        log.warn("SharedStringsTable has uniqueCount={} but read {} entries. This will probably cause some cells to be misinterpreted.",
-                                uniqueCount, this.uniqueCount);
-                    }
-                    this.uniqueCount = uniqueCount;
+                if (pipeline != null) {
+                    pipeline.finish();
+                    this.count += storedCount - this.uniqueCount;
+                    this.uniqueCount = storedCount;
                 }
+                setCounts(count, uniqueCount);
             } finally {
-                xmlEventReader.close();
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+                loading = false;
+                xmlStreamReader.close();
             }
         } catch(XMLStreamException e) {
             throw new IOException("Failed to parse shared strings", e);
         }
     }
 
-    private CTRst getEntryAt(int idx) {
-        CTRst rst = strings.get(idx);
-        if (rst == null) throw new NoSuchElementException();
-        return rst;
+    /**
+     * Moves the entries of a lazily loaded part into the store. This is needed before the table is changed,
+     * so that duplicates of the loaded entries are found.
+     */
+    private void materialize() {
+        if (lazyIndex == null) {
+            return;
+        }
+        LazySstIndex index = lazyIndex;
+        lazyIndex = null;
+        try {
+            int savedCount = count;
+            int savedUniqueCount = uniqueCount;
+            uniqueCount = 0;
+            for (int idx = 0; idx < index.size(); idx++) {
+                Object entry = index.get(idx, fullFormat);
+                if (entry instanceof String) {
+                    addPlainEntry((String) entry, true);
+                } else {
+                    addEntry((CTRst) entry, true);
+                }
+            }
+            count = savedCount;
+            uniqueCount = savedUniqueCount;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Stores a batch of loaded entries. Called on the writer thread of the load pipeline.
+     */
+    private void storeBatch(Object[] entries) {
+        String[] keys = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] instanceof CTRst) {
+                entries[i] = toEntry((CTRst) entries[i]);
+            }
+            keys[i] = getKey(entries[i]);
+        }
+        int firstIdx = storedCount;
+        synchronized (storeLock) {
+            if (dedupPolicy == DedupPolicy.FULL) {
+                store.putAll(firstIdx, keys, entries);
+            } else {
+                for (int i = 0; i < entries.length; i++) {
+                    store.put(firstIdx + i, entries[i]);
+                }
+            }
+        }
+        appendFragments(keys, entries);
+        storedCount = firstIdx + entries.length;
+    }
+
+    private static int parseCount(String value, String name) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (Exception e) {
+                log.warn("Failed to parse SharedStringsTable {}", name);
+            }
+        }
+        return -1;
+    }
+
+    private void setCounts(int count, int uniqueCount) {
+        if (count > -1) {
+            this.count = count;
+        }
+        if (uniqueCount > -1) {
+            if (uniqueCount != this.uniqueCount) {
+                log.warn("SharedStringsTable has uniqueCount={} but read {} entries. This will probably cause some cells to be misinterpreted.",
+                        uniqueCount, this.uniqueCount);
+            }
+            this.uniqueCount = uniqueCount;
+        }
+    }
+
+    private Object getEntryAt(int idx) {
+        if (frozen) {
+            return getFrozenEntryAt(idx);
+        }
+        if (cache != null) {
+            Object entry = cache.get(idx);
+            if (entry != null) return entry;
+        }
+        Object entry;
+        if (lazyIndex != null) {
+            entry = lazyIndex.get(idx, fullFormat);
+        } else if (loading) {
+            // a pipelined load is still writing to the store
+            if (idx >= storedCount) throw new NoSuchElementException();
+            synchronized (storeLock) {
+                entry = store.get(idx);
+            }
+        } else {
+            entry = store.get(idx);
+        }
+        if (entry == null) throw new NoSuchElementException();
+        if (cache != null) {
+            cache.put(idx, entry, RichTextCodec.getEntryMemory(entry));
+        }
+        return entry;
+    }
+
+    private Object getFrozenEntryAt(int idx) {
+        ConcurrentEntryCache c = frozenCache;
+        if (c != null) {
+            Object entry = c.get(idx);
+            if (entry != null) return entry;
+        }
+        Object entry = lazyIndex != null ? lazyIndex.get(idx, fullFormat) : store.get(idx);
+        if (entry == null) throw new NoSuchElementException();
+        if (c != null) {
+            c.put(idx, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Makes this table read-only. After this call, <code>getItemAt</code>, <code>getStringAt</code>,
+     * <code>getCount</code> and <code>getUniqueCount</code> are safe to call from multiple threads without
+     * locking, for example to parse several sheets of a workbook in parallel. Any call that changes the table
+     * throws an <code>IllegalStateException</code>. If the cache is enabled, it is replaced by a lock-free cache
+     * with the same maximum number of entries (the maximum size in bytes is not applied).
+     * <p>
+     * Formatted entries can be shared between threads, so the returned strings must not be modified.
+     * </p>
+     *
+     * @since v2.3.0
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        store.freeze();
+        if (cache != null) {
+            cache.clear();
+            frozenCache = new ConcurrentEntryCache(cacheMaxEntries);
+        }
+        frozen = true;
+    }
+
+    /**
+     * @return whether {@link #freeze()} was called
+     * @since v2.3.0
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("TempFileSharedStringsTable is frozen and cannot be changed");
+        }
     }
 
     /**
@@ -210,7 +446,30 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
      */
     @Override
     public RichTextString getItemAt(int idx) {
-        return new XSSFRichTextString(getEntryAt(idx));
+        Object entry = getEntryAt(idx);
+        if (entry instanceof String) {
+            return new XSSFRichTextString((String) entry);
+        }
+        return new XSSFRichTextString((CTRst) entry);
+    }
+
+    /**
+     * Return the text of a string item by index. This avoids creating a <code>XSSFRichTextString</code>
+     * when the entry has no formatting.
+     *
+     * @param idx index of item to return.
+     * @return the text of the item at the specified position in this Shared String table.
+     * @throws NoSuchElementException if no item exists for this index
+     * @since v2.3.0
+     */
+    public String getStringAt(int idx) {
+        Object entry = getEntryAt(idx);
+        if (entry instanceof String) {
+            String text = (String) entry;
+            // XSSFRichTextString decodes escaped characters like _x000D_
+            return text.contains("_x") ? new XSSFRichTextString(text).getString() : text;
+        }
+        return new XSSFRichTextString((CTRst) entry).getString();
     }
 
     /**
@@ -236,22 +495,207 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
         return uniqueCount;
     }
 
+    /**
+     * @return the number of <code>getItemAt</code> calls that were served by the in-heap cache
+     * @since v2.3.0
+     */
+    public long getCacheHits() {
+        long hits = frozenCache == null ? 0 : frozenCache.getHits();
+        return cache == null ? hits : hits + cache.getHits();
+    }
+
+    /**
+     * @return the number of <code>getItemAt</code> calls that had to read the entry from the temp file store
+     * (0 if the cache is disabled)
+     * @since v2.3.0
+     */
+    public long getCacheMisses() {
+        long misses = frozenCache == null ? 0 : frozenCache.getMisses();
+        return cache == null ? misses : misses + cache.getMisses();
+    }
+
+    /**
+     * @return the number of added entries that the Bloom filter found to be new without searching the store
+     * (0 if the filter is disabled)
+     * @see SharedStringsConfig#bloomFilter(int, double)
+     * @since v2.3.0
+     */
+    public long getBloomFilterSkippedLookups() {
+        return store instanceof BloomFilterSharedStringsStore ?
+                ((BloomFilterSharedStringsStore) store).getSkippedLookups() : 0;
+    }
+
+    /**
+     * @return the number of added entries that matched the Bloom filter, but were new (0 if the filter is disabled)
+     * @see SharedStringsConfig#bloomFilter(int, double)
+     * @since v2.3.0
+     */
+    public long getBloomFilterFalsePositives() {
+        return store instanceof BloomFilterSharedStringsStore ?
+                ((BloomFilterSharedStringsStore) store).getFalsePositives() : 0;
+    }
+
+    /**
+     * @return the share of the new entries that matched the Bloom filter and had to be searched for in the store
+     * (0 if the filter is disabled or no new entries were added)
+     * @see SharedStringsConfig#bloomFilter(int, double)
+     * @since v2.3.0
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        long falsePositives = getBloomFilterFalsePositives();
+        long negatives = falsePositives + getBloomFilterSkippedLookups();
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    /**
+     * @return how duplicates of the added strings are found
+     * @see SharedStringsConfig#dedupPolicy(DedupPolicy)
+     * @since v2.3.0
+     */
+    public DedupPolicy getDedupPolicy() {
+        return dedupPolicy;
+    }
+
     private int addEntry(CTRst st, boolean keepDuplicates) {
         if (st == null) {
             throw new NullPointerException("Cannot add null entry to SharedStringsTable");
         }
-        String s = xmlText(st);
+        if (RichTextCodec.isPlain(st)) {
+            return addPlainEntry(st.getT(), keepDuplicates);
+        }
+        return addEntry(getKey(st), st, keepDuplicates);
+    }
+
+    private int addPlainEntry(String text, boolean keepDuplicates) {
+        return addEntry(PLAIN_KEY_PREFIX + text, text, keepDuplicates);
+    }
+
+    private int addEntry(String key, Object entry, boolean keepDuplicates) {
+        checkNotFrozen();
+        materialize();
         count++;
-        if (!keepDuplicates && stmap.containsKey(s)) {
-            return stmap.get(s);
+        if (!keepDuplicates) {
+            int existingIdx = findDuplicate(key, entry);
+            if (existingIdx >= 0) {
+                return existingIdx;
+            }
         }
 
         int idx = uniqueCount++;
-        stmap.put(s, idx);
-        strings.put(idx, st);
+        indexEntry(key, entry, idx);
+        store.put(idx, entry);
+        if (fragments != null) {
+            fragments.append(key, entry);
+        }
         return idx;
     }
 
+    /**
+     * @return the index of an equal entry that the dedup policy can find, or -1 if there is none
+     */
+    private int findDuplicate(String key, Object entry) {
+        switch (dedupPolicy) {
+            case FULL:
+                return store.find(key, entry);
+            case BOUNDED:
+                Integer idx = dedupWorkingSet.get(key);
+                return idx == null ? -1 : idx;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Makes a new entry visible to {@link #findDuplicate(String, Object)}.
+     */
+    private void indexEntry(String key, Object entry, int idx) {
+        if (dedupPolicy == DedupPolicy.FULL) {
+            store.add(key, entry, idx);
+        } else if (dedupWorkingSet != null) {
+            dedupWorkingSet.put(key, idx, 0);
+        }
+    }
+
+    /**
+     * Counts a cell reference to an entry. Called by the sheet data writers of {@link TempFileSXSSFWorkbook}.
+     */
+    void addReference(int idx) {
+        if (referenceCounts == null) {
+            return;
+        }
+        if (idx >= referenceCounts.length) {
+            referenceCounts = Arrays.copyOf(referenceCounts, Math.max(referenceCounts.length * 2, idx + 1));
+        }
+        referenceCounts[idx]++;
+        referenceTotal++;
+    }
+
+    /**
+     * Prepares the next {@link #writeTo(OutputStream)} to only write the referenced entries, the most referenced
+     * first (entries with the same number of references keep their order).
+     *
+     * @return the new index of each entry (-1 if it is dropped), or null if compactOnWrite is disabled
+     */
+    int[] compact() {
+        if (referenceCounts == null || lazyIndex != null) {
+            return null;
+        }
+        int length = Math.min(uniqueCount, referenceCounts.length);
+        // sort by descending count and then by index, packed in one long so that no objects are needed
+        long[] sortKeys = new long[length];
+        int size = 0;
+        for (int idx = 0; idx < length; idx++) {
+            if (referenceCounts[idx] > 0) {
+                sortKeys[size++] = ((long) (Integer.MAX_VALUE - referenceCounts[idx]) << 32) | idx;
+            }
+        }
+        Arrays.sort(sortKeys, 0, size);
+        int[] order = new int[size];
+        int[] remap = new int[uniqueCount];
+        Arrays.fill(remap, -1);
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) sortKeys[i];
+            remap[order[i]] = i;
+        }
+        compactedOrder = order;
+        return remap;
+    }
+
+    /**
+     * Makes {@link #writeTo(OutputStream)} write all the entries again, after {@link #compact()}.
+     */
+    void endCompaction() {
+        compactedOrder = null;
+    }
+
+    private void appendFragments(String[] keys, Object[] entries) {
+        if (fragments != null) {
+            for (int i = 0; i < entries.length; i++) {
+                fragments.append(keys[i], entries[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the text of the CTRst if it has no formatting, otherwise the CTRst
+     */
+    private static Object toEntry(CTRst st) {
+        if (st == null) {
+            throw new NullPointerException("Cannot add null entry to SharedStringsTable");
+        }
+        return RichTextCodec.isPlain(st) ? st.getT() : st;
+    }
+
+    /**
+     * @return the key that is used to find duplicates of the entry
+     */
+    static String getKey(Object entry) {
+        if (entry instanceof String) {
+            return PLAIN_KEY_PREFIX + entry;
+        }
+        return ((CTRst) entry).xmlText(siSaveOptions);
+    }
+
     /**
      * Add an entry to this Shared String table (a new value is appended to the end).
      *
@@ -271,6 +715,126 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
         return addEntry(((XSSFRichTextString) string).getCTRst(), false);
     }
 
+    /**
+     * Add a plain text entry to this Shared String table (a new value is appended to the end). This gives the
+     * same index as adding an <code>XSSFRichTextString</code> with the same text and no formatting, but no
+     * XMLBeans objects are created.
+     *
+     * @param text the text of the entry to add
+     * @return index the index of added entry
+     * @since v2.3.0
+     */
+    public int addSharedStringItem(String text) {
+        if (text == null) {
+            throw new NullPointerException("Cannot add null entry to SharedStringsTable");
+        }
+        return addPlainEntry(text, false);
+    }
+
+    /**
+     * Add many entries to this Shared String table. This gives the same indexes as calling
+     * {@link #addSharedStringItem(RichTextString)} for each entry, but it is much faster for large numbers of
+     * entries: duplicates within a batch are found in heap and the store is searched and written in bulk,
+     * in sorted key order (with {@link DedupPolicy#FULL}).
+     *
+     * @param strings the entries to add
+     * @return the index of each entry, in the order of <code>strings</code>
+     * @since v2.3.0
+     */
+    public int[] addSharedStringItems(Iterable<? extends RichTextString> strings) {
+        return addSharedStringItems(strings.iterator());
+    }
+
+    /**
+     * Add many entries to this Shared String table. See {@link #addSharedStringItems(Iterable)}.
+     *
+     * @param strings the entries to add
+     * @return the index of each entry, in the order of <code>strings</code>
+     * @since v2.3.0
+     */
+    public int[] addSharedStringItems(Stream<? extends RichTextString> strings) {
+        return addSharedStringItems(strings.iterator());
+    }
+
+    /**
+     * Add many entries to this Shared String table. See {@link #addSharedStringItems(Iterable)}.
+     *
+     * @param strings the entries to add
+     * @return the index of each entry, in the order of <code>strings</code>
+     * @since v2.3.0
+     */
+    public int[] addSharedStringItems(Iterator<? extends RichTextString> strings) {
+        checkNotFrozen();
+        materialize();
+        int[] indexes = new int[16];
+        int size = 0;
+        Object[] entries = new Object[BULK_BATCH_SIZE];
+        String[] keys = new String[BULK_BATCH_SIZE];
+        while (strings.hasNext()) {
+            int batchLength = 0;
+            while (batchLength < BULK_BATCH_SIZE && strings.hasNext()) {
+                RichTextString string = strings.next();
+                if(!(string instanceof XSSFRichTextString)){
+                    throw new IllegalArgumentException("Only XSSFRichTextString argument is supported");
+                }
+                entries[batchLength] = toEntry(((XSSFRichTextString) string).getCTRst());
+                keys[batchLength] = getKey(entries[batchLength]);
+                batchLength++;
+            }
+            if (size + batchLength > indexes.length) {
+                indexes = Arrays.copyOf(indexes, Math.max(indexes.length * 2, size + batchLength));
+            }
+            addBatch(entries, keys, batchLength, indexes, size);
+            size += batchLength;
+        }
+        return Arrays.copyOf(indexes, size);
+    }
+
+    private void addBatch(Object[] entries, String[] keys, int batchLength, int[] indexes, int offset) {
+        if (dedupPolicy != DedupPolicy.FULL) {
+            // there is no store index to search in bulk, and the working set depends on the order of the entries
+            for (int i = 0; i < batchLength; i++) {
+                indexes[offset + i] = addEntry(keys[i], entries[i], false);
+            }
+            return;
+        }
+        // look up each distinct key once, in sorted order
+        Map<String, Integer> firstPositions = new HashMap<>();
+        for (int i = 0; i < batchLength; i++) {
+            firstPositions.putIfAbsent(keys[i], i);
+        }
+        String[] distinctKeys = firstPositions.keySet().toArray(new String[0]);
+        Arrays.sort(distinctKeys);
+        Map<String, Integer> resolved = new HashMap<>();
+        for (String key : distinctKeys) {
+            int existingIdx = store.find(key, entries[firstPositions.get(key)]);
+            if (existingIdx >= 0) {
+                resolved.put(key, existingIdx);
+            }
+        }
+        // new entries get their indexes in the order that they were added
+        int firstNewIdx = uniqueCount;
+        List<String> newKeys = new ArrayList<>();
+        List<Object> newEntries = new ArrayList<>();
+        for (int i = 0; i < batchLength; i++) {
+            Integer idx = resolved.get(keys[i]);
+            if (idx == null) {
+                idx = uniqueCount++;
+                resolved.put(keys[i], idx);
+                newKeys.add(keys[i]);
+                newEntries.add(entries[i]);
+            }
+            indexes[offset + i] = idx;
+        }
+        count += batchLength;
+        if (!newEntries.isEmpty()) {
+            String[] newKeysArray = newKeys.toArray(new String[0]);
+            Object[] newEntriesArray = newEntries.toArray();
+            store.putAll(firstNewIdx, newKeysArray, newEntriesArray);
+            appendFragments(newKeysArray, newEntriesArray);
+        }
+    }
+
     /**
      * TempFileSharedStringsTable only supports streaming access of shared strings.
      * Use <code>getItemAt</code> instead
@@ -291,20 +855,26 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
     @Override
     public void writeTo(OutputStream out) throws IOException {
         Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        int[] order = compactedOrder;
+        int size = order != null ? order.length : uniqueCount;
         try {
             writer.write("<sst count=\"");
-            writer.write(Integer.toString(count));
+            writer.write(Long.toString(order != null ? referenceTotal : count));
             writer.write("\" uniqueCount=\"");
-            writer.write(Integer.toString(uniqueCount));
+            writer.write(Integer.toString(size));
             writer.write("\" xmlns=\"");
             writer.write(NS_SPREADSHEETML);
             writer.write("\">");
-            Iterator<Integer> idIter = strings.keyIterator(null);
-            while (idIter.hasNext()) {
-                Integer stringId = idIter.next();
-                CTRst rst = strings.get(stringId);
-                if (rst != null) {
-                    writer.write(rst.xmlText(siSaveOptions));
+            if (order == null && fragments != null && fragments.size() == uniqueCount) {
+                // the <si> XML of every entry was written when it was added
+                writer.flush();
+                fragments.copyTo(out);
+            } else if (parallelWrite && size > parallelWriteChunkSize) {
+                writer.flush();
+                writeChunksInParallel(out, order, size);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    writeSi(writer, readEntry(order == null ? i : order[i]));
                 }
             }
             writer.write("</sst>");
@@ -314,9 +884,102 @@ public class TempFileSharedStringsTable extends SharedStringsTable {
         }
     }
 
+    /**
+     * Serializes chunks of entries on the parallel write executor and writes them in order. At most
+     * parallelWriteMaxChunksInFlight chunks are being serialized or waiting to be written at once.
+     *
+     * @param order the index of each entry to write (null to write all the entries in index order)
+     * @param size the number of entries to write
+     */
+    private void writeChunksInParallel(OutputStream out, int[] order, int size) throws IOException {
+        // the store only has to support reads from multiple threads when the table is frozen
+        boolean readInTasks = frozen;
+        ArrayDeque<CompletableFuture<ByteArrayOutputStream>> inFlight = new ArrayDeque<>();
+        try {
+            for (int start = 0; start < size; start += parallelWriteChunkSize) {
+                if (inFlight.size() >= parallelWriteMaxChunksInFlight) {
+                    writeChunk(inFlight.poll(), out);
+                }
+                int chunkStart = start;
+                int chunkEnd = Math.min(size, start + parallelWriteChunkSize);
+                Object[] entries = readInTasks ? null : readEntries(order, chunkStart, chunkEnd);
+                inFlight.add(CompletableFuture.supplyAsync(() -> serializeChunk(
+                        entries != null ? entries : readEntries(order, chunkStart, chunkEnd)), parallelWriteExecutor));
+            }
+            while (!inFlight.isEmpty()) {
+                writeChunk(inFlight.poll(), out);
+            }
+        } finally {
+            for (CompletableFuture<ByteArrayOutputStream> future : inFlight) {
+                future.cancel(false);
+            }
+            // wait for any chunks that are still being serialized, before the store can be closed
+            for (CompletableFuture<ByteArrayOutputStream> future : inFlight) {
+                try {
+                    future.join();
+                } catch (CancellationException | CompletionException e) {
+                    // already reported or skipped
+                }
+            }
+        }
+    }
+
+    private Object[] readEntries(int[] order, int start, int end) {
+        Object[] entries = new Object[end - start];
+        for (int i = start; i < end; i++) {
+            entries[i - start] = readEntry(order == null ? i : order[i]);
+        }
+        return entries;
+    }
+
+    private Object readEntry(int idx) {
+        return lazyIndex != null ? lazyIndex.get(idx, fullFormat) : store.get(idx);
+    }
+
+    private static ByteArrayOutputStream serializeChunk(Object[] entries) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(entries.length * 32);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(bos, StandardCharsets.UTF_8))) {
+            for (Object entry : entries) {
+                writeSi(writer, entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos;
+    }
+
+    private static void writeChunk(CompletableFuture<ByteArrayOutputStream> future, OutputStream out)
+            throws IOException {
+        ByteArrayOutputStream chunk;
+        try {
+            chunk = future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        chunk.writeTo(out);
+    }
+
+    private static void writeSi(Writer writer, Object entry) throws IOException {
+        if (entry instanceof String) {
+            TextSerializer.writeSi(writer, (String) entry);
+        } else if (entry != null) {
+            writer.write(((CTRst) entry).xmlText(siSaveOptions));
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        if(mvStore != null) mvStore.closeImmediately();
-        if(tempFile != null) tempFile.delete();
+        if(cache != null) cache.clear();
+        if(fragments != null) fragments.close();
+        if(lazyIndex != null) lazyIndex.close();
+        store.close();
     }
 }
@@ -0,0 +1,77 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.GZIPSheetDataWriter;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Sheet data writer that adds the values of string cells to a {@link TempFileSharedStringsTable} as plain
+ * <code>String</code>s, instead of wrapping each value in a new <code>XSSFRichTextString</code>. The XML that
+ * is written is the same as the XML written by <code>SheetDataWriter</code>.
+ */
+class TempFileSheetDataWriter extends SheetDataWriter {
+
+    private final TempFileSharedStringsTable sharedStringsTable;
+
+    TempFileSheetDataWriter(TempFileSharedStringsTable sharedStringsTable) throws IOException {
+        super(sharedStringsTable);
+        this.sharedStringsTable = sharedStringsTable;
+    }
+
+    @Override
+    public void writeCell(int columnIndex, Cell cell) throws IOException {
+        if (!writeStringCell(_out, sharedStringsTable, columnIndex, cell)) {
+            super.writeCell(columnIndex, cell);
+        }
+    }
+
+    /**
+     * The same as {@link TempFileSheetDataWriter}, for workbooks that compress their temp files.
+     */
+    static class GZIP extends GZIPSheetDataWriter {
+
+        private final TempFileSharedStringsTable sharedStringsTable;
+
+        GZIP(TempFileSharedStringsTable sharedStringsTable) throws IOException {
+            super(sharedStringsTable);
+            this.sharedStringsTable = sharedStringsTable;
+        }
+
+        @Override
+        public void writeCell(int columnIndex, Cell cell) throws IOException {
+            if (!writeStringCell(_out, sharedStringsTable, columnIndex, cell)) {
+                super.writeCell(columnIndex, cell);
+            }
+        }
+    }
+
+    /**
+     * @return false if the cell is not a string cell and was not written
+     */
+    private static boolean writeStringCell(Writer out, TempFileSharedStringsTable sharedStringsTable,
+                                           int columnIndex, Cell cell) throws IOException {
+        if (cell == null || cell.getCellType() != CellType.STRING) {
+            return false;
+        }
+        int idx = sharedStringsTable.addSharedStringItem(cell.getStringCellValue());
+        sharedStringsTable.addReference(idx);
+        out.write("<c r=\"");
+        out.write(new CellReference(cell.getRowIndex(), columnIndex).formatAsString());
+        out.write('"');
+        int styleIndex = cell.getCellStyle().getIndex() & 0xffff;
+        if (styleIndex != 0) {
+            out.write(" s=\"");
+            out.write(Integer.toString(styleIndex));
+            out.write('"');
+        }
+        out.write(" t=\"s\"><v>");
+        out.write(Integer.toString(idx));
+        out.write("</v></c>");
+        return true;
+    }
+}
@@ -1,123 +1,149 @@
 package com.github.pjfanning.poi.xssf.streaming;
 
+import org.apache.xmlbeans.XmlCursor;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.Collections;
-import java.util.List;
-import java.util.ListIterator;
+import javax.xml.stream.XMLStreamReader;
 
-import static com.github.pjfanning.poi.xssf.streaming.Constants.XML_EVENT_FACTORY;
-import static com.github.pjfanning.poi.xssf.streaming.Constants.XML_OUTPUT_FACTORY;
 import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
 
 class TextParser {
 
     /**
-     * Parses a {@code <si>} String Item. Returns just the text and drops the formatting. See <a
-     * href="https://msdn.microsoft.com/en-us/library/documentformat.openxml.spreadsheet.sharedstringitem.aspx">xmlschema
-     * type {@code CT_Rst}</a>.
+     * Parses a {@code <si>} String Item with the cursor API. Returns just the text and drops the formatting.
+     * <code>buf</code> is cleared and reused, so that parsing many items does not allocate a new buffer
+     * for each one.
      */
-    static String parseCT_Rst(XMLEventReader xmlEventReader) throws XMLStreamException {
+    static String parseCT_Rst(XMLStreamReader xmlStreamReader, StringBuilder buf) throws XMLStreamException {
         // Precondition: pointing to <si> or <text>;  Post condition: pointing to </si> or </text>
-        StringBuilder buf = new StringBuilder();
-        XMLEvent xmlEvent;
-        while((xmlEvent = xmlEventReader.nextTag()).isStartElement()) {
-            switch(xmlEvent.asStartElement().getName().getLocalPart()) {
-                case "t": // Text
-                    buf.append(xmlEventReader.getElementText());
-                    break;
-                case "r": // Rich Text Run
-                    parseCT_RElt(xmlEventReader, buf);
-                    break;
-                case "rPh": // Phonetic Run
-                case "phoneticPr": // Phonetic Properties
-                    skipElement(xmlEventReader);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unexpected start element: " + xmlEvent.asStartElement().getName().getLocalPart());
+        buf.setLength(0);
+        while(xmlStreamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String localName = xmlStreamReader.getLocalName();
+            if (localName.equals("t")) { // Text
+                appendElementText(xmlStreamReader, buf);
+            } else if (localName.equals("r")) { // Rich Text Run
+                parseCT_RElt(xmlStreamReader, buf);
+            } else if (localName.equals("rPh") || localName.equals("phoneticPr")) { // Phonetic Run or Properties
+                skipElement(xmlStreamReader);
+            } else {
+                throw new IllegalArgumentException("Unexpected start element: " + localName);
             }
         }
         return buf.toString();
     }
 
     /**
-     * Parses a {@code <r>} Rich Text Run. Returns just the text and drops the formatting. See <a
-     * href="https://msdn.microsoft.com/en-us/library/documentformat.openxml.spreadsheet.run.aspx">xmlschema
-     * type {@code CT_RElt}</a>.
+     * Parses a {@code <r>} Rich Text Run with the cursor API. Appends just the text and drops the formatting.
      */
-    static void parseCT_RElt(XMLEventReader xmlEventReader, StringBuilder buf) throws XMLStreamException {
+    static void parseCT_RElt(XMLStreamReader xmlStreamReader, StringBuilder buf) throws XMLStreamException {
         // Precondition: pointing to <r>;  Post condition: pointing to </r>
-        XMLEvent xmlEvent;
-        while((xmlEvent = xmlEventReader.nextTag()).isStartElement()) {
-            switch(xmlEvent.asStartElement().getName().getLocalPart()) {
-                case "t": // Text
-                    buf.append(xmlEventReader.getElementText());
-                    break;
-                case "rPr": // Run Properties
-                    skipElement(xmlEventReader);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unexpected start element: " + xmlEvent.asStartElement().getName().getLocalPart());
+        while(xmlStreamReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String localName = xmlStreamReader.getLocalName();
+            if (localName.equals("t")) { // Text
+                appendElementText(xmlStreamReader, buf);
+            } else if (localName.equals("rPr")) { // Run Properties
+                skipElement(xmlStreamReader);
+            } else {
+                throw new IllegalArgumentException("Unexpected start element: " + localName);
             }
         }
     }
 
-    static String getXMLText(XMLEventReader xmlEventReader, QName tag, List<String> wrappingTags) throws IOException, XMLStreamException {
-        try (StringWriter sw = new StringWriter()) {
-            XMLEventWriter xew = XML_OUTPUT_FACTORY.createXMLEventWriter(sw);
-            try {
-                for (String tagName : wrappingTags) {
-                    xew.add(XML_EVENT_FACTORY.createStartElement(new QName(NS_SPREADSHEETML, tagName),
-                            Collections.emptyIterator(), Collections.emptyIterator()));
-                }
-                XMLEvent event = xmlEventReader.nextEvent();
-                while (event != null && !(event.isEndElement() && event.asEndElement().getName().equals(tag))) {
-                    xew.add(adjustNamespaceOnEvent(event));
-                    event = xmlEventReader.nextEvent();
-                }
-                ListIterator<String> tagIter = wrappingTags.listIterator(wrappingTags.size());
-                while (tagIter.hasPrevious()) {
-                    String tagName = tagIter.previous();
-                    xew.add(XML_EVENT_FACTORY.createEndElement(new QName(NS_SPREADSHEETML, tagName),
-                            Collections.emptyIterator()));
-                }
-            } finally {
-                xew.close();
+    /**
+     * Appends the text of a text-only element to <code>buf</code>, without creating a String for it.
+     */
+    static void appendElementText(XMLStreamReader xmlStreamReader, StringBuilder buf) throws XMLStreamException {
+        // Precondition: pointing to start element;  Post condition: pointing to end element
+        int eventType;
+        while((eventType = xmlStreamReader.next()) != XMLStreamConstants.END_ELEMENT) {
+            switch (eventType) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    buf.append(xmlStreamReader.getTextCharacters(), xmlStreamReader.getTextStart(),
+                            xmlStreamReader.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    buf.append(xmlStreamReader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    break;
+                default:
+                    throw new XMLStreamException("Unexpected event type " + eventType + " in text-only element",
+                            xmlStreamReader.getLocation());
             }
-            return sw.toString();
         }
     }
 
-    private static XMLEvent adjustNamespaceOnEvent(XMLEvent event) {
-        if (event.isStartElement()) {
-            StartElement se = event.asStartElement();
-            String nsUri = se.getName().getNamespaceURI();
-            if (nsUri != null && !nsUri.equals(NS_SPREADSHEETML)) {
-                return XML_EVENT_FACTORY.createStartElement(new QName(NS_SPREADSHEETML, se.getName().getLocalPart()),
-                        se.getAttributes(), Collections.emptyIterator());
-            }
-        } else if (event.isEndElement()) {
-            EndElement ee = event.asEndElement();
-            String nsUri = ee.getName().getNamespaceURI();
-            if (nsUri != null && !nsUri.equals(NS_SPREADSHEETML)) {
-                return XML_EVENT_FACTORY.createEndElement(new QName(NS_SPREADSHEETML, ee.getName().getLocalPart()),
-                        Collections.emptyIterator());
+    /**
+     * Parses a {@code <si>} String Item (or the {@code <text>} of a comment) with the cursor API and keeps
+     * the formatting. The <code>CTRst</code> is built directly from the parser events, instead of
+     * re-serializing the item and parsing it with XMLBeans. Elements in other namespaces (eg the
+     * strict OOXML namespace) are moved to the SpreadsheetML namespace. Whitespace outside of the
+     * {@code <t>} elements is dropped.
+     */
+    static CTRst parseFullCT_Rst(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+        // Precondition: pointing to <si> or <text>;  Post condition: pointing to </si> or </text>
+        CTRst st = CTRst.Factory.newInstance();
+        XmlCursor cursor = st.newCursor();
+        try {
+            cursor.toEndToken();
+            int depth = 1;
+            boolean inText = false;
+            while (depth > 0) {
+                switch (xmlStreamReader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        String localName = xmlStreamReader.getLocalName();
+                        inText = localName.equals("t");
+                        cursor.beginElement(new QName(NS_SPREADSHEETML, localName));
+                        for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
+                            String ns = xmlStreamReader.getAttributeNamespace(i);
+                            cursor.insertAttributeWithValue(
+                                    new QName(ns == null ? "" : ns, xmlStreamReader.getAttributeLocalName(i)),
+                                    xmlStreamReader.getAttributeValue(i));
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        inText = false;
+                        if (depth > 0) {
+                            cursor.toNextToken();
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        if (inText) {
+                            cursor.insertChars(xmlStreamReader.getText());
+                        }
+                        break;
+                    default:
+                        break;
+                }
             }
+        } finally {
+            cursor.dispose();
         }
-        return event;
+        return st;
     }
 
-    private static void skipElement(XMLEventReader xmlEventReader) throws XMLStreamException {
+    static void skipElement(XMLStreamReader xmlStreamReader) throws XMLStreamException {
         // Precondition: pointing to start element;  Post condition: pointing to end element
-        while(xmlEventReader.nextTag().isStartElement()) {
-            skipElement(xmlEventReader); // recursively skip over child
+        // the element can have text content (eg the <t> in <rPh>), so nextTag() cannot be used
+        int depth = 1;
+        while(depth > 0) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
         }
     }
 }
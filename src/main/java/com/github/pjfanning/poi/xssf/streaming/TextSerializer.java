@@ -0,0 +1,76 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.Writer;
+
+class TextSerializer {
+
+    /**
+     * Writes a plain text {@code <si>} String Item. The output matches what XMLBeans produces when saving
+     * a {@code CT_Rst} that only has its {@code t} element set.
+     */
+    static void writeSi(Writer writer, String text) throws IOException {
+        writer.write("<si>");
+        writeT(writer, text);
+        writer.write("</si>");
+    }
+
+    /**
+     * Writes a {@code <t>} Text element, adding <code>xml:space="preserve"</code> when the text
+     * has leading or trailing whitespace (the same rule that <code>XSSFRichTextString</code> uses).
+     */
+    static void writeT(Writer writer, String text) throws IOException {
+        if (text == null || text.isEmpty()) {
+            writer.write("<t/>");
+            return;
+        }
+        if (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1))) {
+            writer.write("<t xml:space=\"preserve\">");
+        } else {
+            writer.write("<t>");
+        }
+        writeEscaped(writer, text);
+        writer.write("</t>");
+    }
+
+    /**
+     * Writes element text content. Characters that are not allowed in XML 1.0 are replaced with '?',
+     * as XMLBeans does.
+     */
+    static void writeEscaped(Writer writer, String text) throws IOException {
+        final int len = text.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '\r':
+                    replacement = "&#13;";
+                    break;
+                default:
+                    if (c < 0x20 && c != '\t' && c != '\n' || c == 0xFFFE || c == 0xFFFF) {
+                        replacement = "?";
+                    } else {
+                        continue;
+                    }
+            }
+            if (i > start) {
+                writer.write(text, start, i - start);
+            }
+            writer.write(replacement);
+            start = i + 1;
+        }
+        if (start < len) {
+            writer.write(text, start, len - start);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.store.fs.FileBaseDefault;
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FilePathWrapper;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registers a H2 file system (<code>poiAesXts:</code>) that encrypts the wrapped file with AES-XTS using a raw key,
+ * so opening a store needs no password-based key derivation. The file is encrypted in 4 KB sectors and the tweak
+ * of each sector is made of a random per-file nonce and the sector number. Unlike a stream cipher, rewriting a
+ * sector with new data (MVStore rewrites its header blocks on every commit and reuses the space of old chunks)
+ * does not reveal how the old and the new data differ. The keys are only held in memory, from
+ * {@link #register(String, SecretKeySpec)} until {@link #unregister(String)}.
+ */
+class XtsEncryptedFilePath {
+
+    private static final String SCHEME = "poiAesXts";
+    private static final int SECTOR_SIZE = 4096;
+    private static final int BLOCK_SIZE = 16;
+    private static final Map<String, FileKey> KEYS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Cipher> CIPHER;
+    static {
+        try {
+            CIPHER = Constants.threadLocalCipher("AES/ECB/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        FilePath.register(new EncryptedFilePath());
+    }
+
+    private static final class FileKey {
+        final SecretKeySpec dataKey;
+        final SecretKeySpec tweakKey;
+        final long nonce;
+
+        FileKey(SecretKeySpec dataKey, long nonce) throws GeneralSecurityException {
+            this.dataKey = dataKey;
+            // XTS needs a second key for the tweaks; it is the raw key encrypted with itself, so no KDF is needed
+            byte[] keyBytes = dataKey.getEncoded();
+            Cipher c = CIPHER.get();
+            c.init(Cipher.ENCRYPT_MODE, dataKey);
+            this.tweakKey = new SecretKeySpec(c.doFinal(keyBytes), "AES");
+            this.nonce = nonce;
+        }
+    }
+
+    /**
+     * @param fileName the name of the file to encrypt
+     * @param key the AES key
+     * @return the name to open the encrypted file with
+     */
+    static String register(String fileName, SecretKeySpec key) {
+        String encryptedFileName = SCHEME + ":" + fileName;
+        try {
+            KEYS.put(encryptedFileName, new FileKey(key, Constants.RANDOM.nextLong()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to set up temp file encryption", e);
+        }
+        return encryptedFileName;
+    }
+
+    /**
+     * Forgets the key of a file.
+     *
+     * @param fileName the name returned by {@link #register(String, SecretKeySpec)}, or any other file name
+     * @return the name of the wrapped file
+     */
+    static String unregister(String fileName) {
+        if (fileName.startsWith(SCHEME + ":")) {
+            KEYS.remove(fileName);
+            return fileName.substring(SCHEME.length() + 1);
+        }
+        return fileName;
+    }
+
+    private XtsEncryptedFilePath() {}
+
+    /**
+     * H2 creates the instances of this file system with reflection, so it must be a public class.
+     */
+    public static final class EncryptedFilePath extends FilePathWrapper {
+
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public FileChannel open(String mode) throws IOException {
+            FileKey fileKey = KEYS.get(name);
+            if (fileKey == null) {
+                throw new IOException("No encryption key is registered for " + name);
+            }
+            return new FileXts(getBase().open(mode), fileKey);
+        }
+    }
+
+    /**
+     * The wrapped file always holds whole sectors. MVStore reads and writes whole 4 KB blocks, so the
+     * read-modify-write of partial sectors is only a fallback.
+     */
+    private static final class FileXts extends FileBaseDefault {
+
+        private final FileChannel base;
+        private final FileKey fileKey;
+
+        FileXts(FileChannel base, FileKey fileKey) {
+            this.base = base;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            long size = base.size();
+            if (position >= size) {
+                return dst.hasRemaining() ? -1 : 0;
+            }
+            int len = (int) Math.min(dst.remaining(), size - position);
+            long sectorStart = position / SECTOR_SIZE * SECTOR_SIZE;
+            byte[] data = readSectors(sectorStart, position + len);
+            dst.put(data, (int) (position - sectorStart), len);
+            return len;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            int len = src.remaining();
+            long sectorStart = position / SECTOR_SIZE * SECTOR_SIZE;
+            long end = position + len;
+            byte[] data;
+            if (sectorStart == position && len % SECTOR_SIZE == 0) {
+                data = new byte[len];
+            } else {
+                data = readSectors(sectorStart, end);
+            }
+            src.get(data, (int) (position - sectorStart), len);
+            crypt(Cipher.ENCRYPT_MODE, sectorStart, data);
+            ByteBuffer bb = ByteBuffer.wrap(data);
+            long pos = sectorStart;
+            while (bb.hasRemaining()) {
+                pos += base.write(bb, pos);
+            }
+            return len;
+        }
+
+        /**
+         * @return the decrypted sectors that hold the range (zeros past the end of the file)
+         */
+        private byte[] readSectors(long sectorStart, long end) throws IOException {
+            long sectorEnd = (end + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE;
+            byte[] data = new byte[(int) (sectorEnd - sectorStart)];
+            ByteBuffer bb = ByteBuffer.wrap(data);
+            while (bb.hasRemaining()) {
+                if (base.read(bb, sectorStart + bb.position()) < 0) {
+                    break;
+                }
+            }
+            int sectorsRead = bb.position() / SECTOR_SIZE * SECTOR_SIZE;
+            if (sectorsRead > 0) {
+                crypt(Cipher.DECRYPT_MODE, sectorStart, Arrays.copyOf(data, sectorsRead), data);
+            }
+            Arrays.fill(data, sectorsRead, data.length, (byte) 0);
+            return data;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return base.size();
+        }
+
+        @Override
+        protected void implTruncate(long newLength) throws IOException {
+            base.truncate((newLength + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE);
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            base.force(metaData);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return base.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            base.close();
+        }
+
+        private void crypt(int mode, long offset, byte[] data) throws IOException {
+            crypt(mode, offset, data, data);
+        }
+
+        /**
+         * Encrypts or decrypts whole sectors with AES-XTS. The output can be the input array.
+         */
+        private void crypt(int mode, long offset, byte[] in, byte[] out) throws IOException {
+            int len = in.length;
+            int sectors = len / SECTOR_SIZE;
+            long firstSector = offset / SECTOR_SIZE;
+            Cipher c = CIPHER.get();
+            try {
+                byte[] tweaks = new byte[sectors * BLOCK_SIZE];
+                ByteBuffer tweakBuffer = ByteBuffer.wrap(tweaks);
+                for (int i = 0; i < sectors; i++) {
+                    tweakBuffer.putLong(fileKey.nonce).putLong(firstSector + i);
+                }
+                c.init(Cipher.ENCRYPT_MODE, fileKey.tweakKey);
+                c.doFinal(tweaks, 0, tweaks.length, tweaks, 0);
+                // the tweak of each block is the sector tweak multiplied by alpha once per block
+                byte[] blockTweaks = new byte[len];
+                for (int i = 0; i < sectors; i++) {
+                    byte[] t = Arrays.copyOfRange(tweaks, i * BLOCK_SIZE, (i + 1) * BLOCK_SIZE);
+                    for (int p = i * SECTOR_SIZE; p < (i + 1) * SECTOR_SIZE; p += BLOCK_SIZE) {
+                        System.arraycopy(t, 0, blockTweaks, p, BLOCK_SIZE);
+                        multiplyByAlpha(t);
+                    }
+                }
+                for (int i = 0; i < len; i++) {
+                    out[i] = (byte) (in[i] ^ blockTweaks[i]);
+                }
+                c.init(mode, fileKey.dataKey);
+                c.doFinal(out, 0, len, out, 0);
+                for (int i = 0; i < len; i++) {
+                    out[i] ^= blockTweaks[i];
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt temp file data", e);
+            }
+        }
+
+        /**
+         * Multiplies the tweak by the primitive element of GF(2^128), in the little-endian order of IEEE 1619.
+         */
+        private static void multiplyByAlpha(byte[] t) {
+            int carry = 0;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                int b = t[i] & 0xff;
+                t[i] = (byte) ((b << 1) | carry);
+                carry = b >>> 7;
+            }
+            if (carry != 0) {
+                t[0] ^= (byte) 0x87;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBloomFilterSharedStringsStore {
+
+    @Test
+    public void testFindAndGrow() {
+        try (BloomFilterSharedStringsStore store = new BloomFilterSharedStringsStore(
+                SharedStringsStoreFactory.inHeap().create(false), 100, 0.01)) {
+            for (int i = 0; i < 1000; i++) {
+                String text = "value" + i;
+                String key = TempFileSharedStringsTable.getKey(text);
+                assertEquals(-1, store.find(key, text));
+                store.add(key, text, i);
+                store.put(i, text);
+            }
+            // 1000 keys do not fit in the filters for 100, 200 and 400 keys
+            assertEquals(4, store.getFilterSliceCount());
+            for (int i = 0; i < 1000; i++) {
+                String text = "value" + i;
+                assertEquals(i, store.find(TempFileSharedStringsTable.getKey(text), text));
+            }
+            assertEquals(2000, store.getLookups());
+            assertEquals(1000, store.getSkippedLookups() + store.getFalsePositives());
+            assertTrue(store.getFalsePositives() < 10);
+        }
+    }
+
+    @Test
+    public void testPutAllAndClear() {
+        try (BloomFilterSharedStringsStore store = new BloomFilterSharedStringsStore(
+                SharedStringsStoreFactory.inHeap().create(false), 10, 0.01)) {
+            String[] entries = new String[50];
+            String[] keys = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = "value" + i;
+                keys[i] = TempFileSharedStringsTable.getKey(entries[i]);
+            }
+            store.putAll(0, keys, entries);
+            for (int i = 0; i < entries.length; i++) {
+                assertEquals(i, store.find(keys[i], entries[i]));
+            }
+            assertTrue(store.clear());
+            assertEquals(1, store.getFilterSliceCount());
+            assertEquals(0, store.getLookups());
+            assertEquals(-1, store.find(keys[0], entries[0]));
+            assertEquals(1, store.getSkippedLookups());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.junit.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestMappedLogSharedStringsStore {
+
+    @Test
+    public void testChunkBoundaries() {
+        testChunkBoundaries(false);
+    }
+
+    @Test
+    public void testChunkBoundariesEncrypted() {
+        testChunkBoundaries(true);
+    }
+
+    private void testChunkBoundaries(boolean encrypt) {
+        Random rnd = new Random(42);
+        String[] values = new String[200];
+        for (int i = 0; i < values.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            // some entries are bigger than a chunk
+            int len = rnd.nextInt(i % 20 == 0 ? 2000 : 100);
+            for (int j = 0; j < len; j++) {
+                sb.append((char) ('a' + rnd.nextInt(26)));
+            }
+            sb.append('\u00e9');
+            values[i] = sb.toString();
+        }
+        XSSFRichTextString rts = new XSSFRichTextString("rich text");
+        XSSFFont font = new XSSFFont();
+        font.setBold(true);
+        rts.applyFont(0, 4, font);
+        CTRst rst = rts.getCTRst();
+        try (MappedLogSharedStringsStore store = new MappedLogSharedStringsStore(encrypt, Object::toString, 1024)) {
+            for (int i = 0; i < values.length; i++) {
+                store.put(i, values[i]);
+            }
+            store.put(values.length, rst);
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], store.get(i));
+            }
+            assertEquals(rst.xmlText(), ((CTRst) store.get(values.length)).xmlText());
+            assertNull(store.get(values.length + 1));
+        }
+    }
+
+    @Test
+    public void testWithoutH2() throws Exception {
+        ClassLoader loader = new H2HidingClassLoader(getClass().getClassLoader());
+        try {
+            loader.loadClass("org.h2.mvstore.MVStore");
+            fail("H2 should not be visible");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        String expected = WithoutH2.writeTable();
+        Class<?> withoutH2 = Class.forName(WithoutH2.class.getName(), true, loader);
+        assertEquals(loader, withoutH2.getClassLoader());
+        try {
+            assertEquals(expected, withoutH2.getMethod("writeTable").invoke(null));
+        } catch (InvocationTargetException e) {
+            throw new AssertionError("Failed without H2", e.getCause());
+        }
+    }
+
+    /**
+     * Uses the memory-mapped store with the settings that do not need H2. This is loaded by a
+     * {@link H2HidingClassLoader} in {@link #testWithoutH2()}.
+     */
+    public static class WithoutH2 {
+        public static String writeTable() throws IOException {
+            SharedStringsConfig config = new SharedStringsConfig().mappedLogStore(true)
+                    .cache(10, 100000).spillToDisk(2, Long.MAX_VALUE).bloomFilter(10, 0.01);
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, true, config)) {
+                sst.addSharedStringItem("hello");
+                sst.addSharedStringItem("hello");
+                XSSFRichTextString rts = new XSSFRichTextString("rich text");
+                XSSFFont font = new XSSFFont();
+                font.setBold(true);
+                rts.applyFont(0, 4, font);
+                sst.addSharedStringItem(rts);
+                for (int i = 0; i < 20; i++) {
+                    sst.addSharedStringItem("value" + (i % 5));
+                }
+                sst.getItemAt(2);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                sst.writeTo(bos);
+                return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Hides the H2 classes. The classes of this library are loaded by this class loader too, so that the H2
+     * classes that they refer to are looked up here.
+     */
+    private static class H2HidingClassLoader extends ClassLoader {
+        private static final String PACKAGE_PREFIX = "com.github.pjfanning.poi.";
+
+        H2HidingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("org.h2.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith(PACKAGE_PREFIX)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    byte[] bytes;
+                    try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (is == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                        byte[] buf = new byte[8192];
+                        int read;
+                        while ((read = is.read(buf)) != -1) {
+                            bos.write(buf, 0, read);
+                        }
+                        bytes = bos.toByteArray();
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+}
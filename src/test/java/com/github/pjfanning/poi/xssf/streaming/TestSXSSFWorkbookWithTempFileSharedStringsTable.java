@@ -1,16 +1,24 @@
 package com.github.pjfanning.poi.xssf.streaming;
 
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestSXSSFWorkbookWithTempFileSharedStringsTable {
 
@@ -57,4 +65,176 @@ public class TestSXSSFWorkbookWithTempFileSharedStringsTable {
             wb.close();
         }
     }
+
+    @Test
+    public void plainStringSheetDataWriter() throws Exception {
+        for (boolean compress : new boolean[]{false, true}) {
+            SXSSFFactory factory = new SXSSFFactory().encryptTempFiles(compress);
+            SXSSFWorkbook wb = factory.createSXSSFWorkbook(2, compress);
+            assertEquals(TempFileSXSSFWorkbook.class, wb.getClass());
+            CellStyle style = wb.createCellStyle();
+            style.setWrapText(true);
+            Sheet sheet = wb.createSheet("S1");
+            for (int r = 0; r < 10; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("value" + (r % 3));
+                row.createCell(1).setCellValue(r);
+                Cell styled = row.createCell(3);
+                styled.setCellValue(new XSSFRichTextString(" spaced " + r));
+                styled.setCellStyle(style);
+            }
+
+            XSSFWorkbook xssfWorkbook = POITestCase.writeOutAndReadBack(wb);
+            SharedStringsTable sss = POITestCase.getFieldValue(SXSSFWorkbook.class, wb, SharedStringsTable.class, "_sharedStringSource");
+            assertEquals(13, sss.getUniqueCount());
+            assertEquals(20, sss.getCount());
+            assertTrue(wb.dispose());
+
+            Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+            assertEquals(10, sheet1.getPhysicalNumberOfRows());
+            for (int r = 0; r < 10; r++) {
+                Row row = sheet1.getRow(r);
+                assertEquals("value" + (r % 3), row.getCell(0).getStringCellValue());
+                assertEquals(r, row.getCell(1).getNumericCellValue(), 0.0);
+                assertNull(row.getCell(2));
+                assertEquals(" spaced " + r, row.getCell(3).getStringCellValue());
+                assertTrue(row.getCell(3).getCellStyle().getWrapText());
+                assertFalse(row.getCell(0).getCellStyle().getWrapText());
+            }
+
+            xssfWorkbook.close();
+            wb.close();
+        }
+    }
+
+    @Test
+    public void storeFailureIsNotWrapped() {
+        IllegalStateException failure = new IllegalStateException("store failed");
+        SXSSFFactory factory = new SXSSFFactory().sharedStringsConfig(new SharedStringsConfig()
+                .storeFactory(encryptTempFiles -> {
+                    throw failure;
+                }));
+        try {
+            factory.newDocumentPart(XSSFRelation.SHARED_STRINGS);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void nullSharedStringsConfig() {
+        try {
+            new SXSSFFactory().sharedStringsConfig(null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void dedupPolicy() throws Exception {
+        // the factories share one config and the policy of each factory does not change it
+        SharedStringsConfig config = new SharedStringsConfig();
+        for (DedupPolicy dedupPolicy : DedupPolicy.values()) {
+            SXSSFFactory factory = new SXSSFFactory().sharedStringsConfig(config).dedupPolicy(dedupPolicy);
+            SXSSFWorkbook wb = factory.createSXSSFWorkbook(2, false);
+            Sheet sheet = wb.createSheet("S1");
+            for (int r = 0; r < 10; r++) {
+                sheet.createRow(r).createCell(0).setCellValue("value" + (r % 3));
+            }
+
+            XSSFWorkbook xssfWorkbook = POITestCase.writeOutAndReadBack(wb);
+            SharedStringsTable sss = POITestCase.getFieldValue(SXSSFWorkbook.class, wb, SharedStringsTable.class, "_sharedStringSource");
+            assertEquals(dedupPolicy, ((TempFileSharedStringsTable) sss).getDedupPolicy());
+            assertEquals(dedupPolicy == DedupPolicy.NONE ? 10 : 3, sss.getUniqueCount());
+            assertEquals(10, sss.getCount());
+            assertTrue(wb.dispose());
+
+            Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+            for (int r = 0; r < 10; r++) {
+                assertEquals("value" + (r % 3), sheet1.getRow(r).getCell(0).getStringCellValue());
+            }
+
+            xssfWorkbook.close();
+            wb.close();
+        }
+        assertEquals(DedupPolicy.FULL, config.getDedupPolicy());
+    }
+
+    @Test
+    public void compactOnWrite() throws Exception {
+        for (boolean compress : new boolean[]{false, true}) {
+            SXSSFFactory factory = new SXSSFFactory().encryptTempFiles(compress)
+                    .sharedStringsConfig(new SharedStringsConfig().compactOnWrite(true)
+                            .parallelWrite(compress).parallelWriteChunks(1, 2));
+            SXSSFWorkbook wb = factory.createSXSSFWorkbook(2, compress);
+            TempFileSharedStringsTable sss = (TempFileSharedStringsTable) POITestCase.getFieldValue(
+                    SXSSFWorkbook.class, wb, SharedStringsTable.class, "_sharedStringSource");
+            assertEquals(0, sss.addSharedStringItem("unused"));
+            Sheet sheet = wb.createSheet("S1");
+            // "rare" is added first, but "common" is used most
+            String[] values = {"rare", "common", "medium", "common", "medium", "common"};
+            for (int r = 0; r < 12; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(values[r % values.length]);
+                row.createCell(1).setCellValue(r);
+            }
+            wb.createSheet("S2").createRow(0).createCell(0).setCellValue("rare");
+
+            for (int i = 0; i < 2; i++) {
+                XSSFWorkbook xssfWorkbook;
+                if (i == 0) {
+                    xssfWorkbook = POITestCase.writeOutAndReadBack(wb);
+                } else {
+                    UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+                    wb.writeAvoidingTempFiles(bos);
+                    xssfWorkbook = new XSSFWorkbook(bos.toInputStream());
+                }
+                SharedStringsTable saved = xssfWorkbook.getSharedStringSource();
+                assertEquals(3, saved.getUniqueCount());
+                assertEquals(13, saved.getCount());
+                assertEquals("common", saved.getItemAt(0).getString());
+                assertEquals("medium", saved.getItemAt(1).getString());
+                assertEquals("rare", saved.getItemAt(2).getString());
+                Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+                for (int r = 0; r < 12; r++) {
+                    assertEquals(values[r % values.length], sheet1.getRow(r).getCell(0).getStringCellValue());
+                    assertEquals(r, sheet1.getRow(r).getCell(1).getNumericCellValue(), 0.0);
+                }
+                assertEquals("rare", xssfWorkbook.getSheetAt(1).getRow(0).getCell(0).getStringCellValue());
+                xssfWorkbook.close();
+            }
+            // the table itself is not changed
+            assertEquals(4, sss.getUniqueCount());
+            assertEquals("unused", sss.getStringAt(0));
+
+            assertTrue(wb.dispose());
+            wb.close();
+        }
+    }
+
+    @Test
+    public void compactOnWriteSkippedForTemplateRows() throws Exception {
+        SXSSFFactory factory = new SXSSFFactory()
+                .sharedStringsConfig(new SharedStringsConfig().compactOnWrite(true));
+        XSSFWorkbook template = new XSSFWorkbook(factory);
+        template.createSheet("S1").createRow(0).createCell(0).setCellValue("template");
+        SXSSFWorkbook wb = new TempFileSXSSFWorkbook(template, 2, false, true);
+        Sheet sheet = wb.getSheetAt(0);
+        for (int r = 1; r < 5; r++) {
+            sheet.createRow(r).createCell(0).setCellValue("value");
+        }
+
+        XSSFWorkbook xssfWorkbook = POITestCase.writeOutAndReadBack(wb);
+        assertEquals(2, xssfWorkbook.getSharedStringSource().getUniqueCount());
+        Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+        assertEquals("template", sheet1.getRow(0).getCell(0).getStringCellValue());
+        for (int r = 1; r < 5; r++) {
+            assertEquals("value", sheet1.getRow(r).getCell(0).getStringCellValue());
+        }
+        assertTrue(wb.dispose());
+        xssfWorkbook.close();
+        wb.close();
+    }
 }
@@ -2,13 +2,24 @@ package com.github.pjfanning.poi.xssf.streaming;
 
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.junit.Test;
 
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.h2.mvstore.WriteBuffer;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTPhoneticPr;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTPhoneticRun;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STPhoneticType;
+
+import java.awt.Color;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class TestSerializable {
     @Test
@@ -33,4 +44,72 @@ public class TestSerializable {
             }
         }
     }
+
+    @Test
+    public void testCommentDataType() {
+        SerializableComment comment = new SerializableComment();
+        comment.setString(createRichText());
+        comment.setAuthorId(3);
+        comment.setAddress(new CellAddress("AB2000"));
+        comment.setVisible(false);
+        SerializableComment deserializedComment = roundTrip(comment);
+        assertEquals(comment.getAddress(), deserializedComment.getAddress());
+        assertEquals(3, deserializedComment.getAuthorId());
+        assertNull(deserializedComment.getAuthor());
+        assertEquals(comment.isVisible(), deserializedComment.isVisible());
+        assertEquals(comment.getCTRst().xmlText(), deserializedComment.getCTRst().xmlText());
+
+        comment = new SerializableComment();
+        comment.setString(" plain text ");
+        comment.setAuthor("test author");
+        comment.setAddress(new CellAddress("A1"));
+        deserializedComment = roundTrip(comment);
+        assertEquals(comment.getAddress(), deserializedComment.getAddress());
+        assertEquals("test author", deserializedComment.getAuthor());
+        assertEquals(comment.isVisible(), deserializedComment.isVisible());
+        assertEquals(comment.getCTRst().xmlText(), deserializedComment.getCTRst().xmlText());
+    }
+
+    @Test
+    public void testSharedStringDataType() {
+        CTRst rst = createRichText().getCTRst();
+        CTPhoneticRun phoneticRun = rst.addNewRPh();
+        phoneticRun.setSb(1);
+        phoneticRun.setEb(2);
+        phoneticRun.setT("phonetic");
+        CTPhoneticPr phoneticPr = rst.addNewPhoneticPr();
+        phoneticPr.setFontId(4);
+        phoneticPr.setType(STPhoneticType.HIRAGANA);
+        WriteBuffer buff = new WriteBuffer();
+        SharedStringDataType.INSTANCE.write(buff, rst);
+        SharedStringDataType.INSTANCE.write(buff, "plain text");
+        ByteBuffer bb = buff.getBuffer();
+        bb.flip();
+        CTRst deserialized = (CTRst) SharedStringDataType.INSTANCE.read(bb);
+        assertEquals(rst.xmlText(), deserialized.xmlText());
+        assertEquals("plain text", SharedStringDataType.INSTANCE.read(bb));
+    }
+
+    private static XSSFRichTextString createRichText() {
+        XSSFRichTextString rts = new XSSFRichTextString("Bold red text and plain text ");
+        XSSFFont font = new XSSFFont();
+        font.setFontName("Arial");
+        font.setBold(true);
+        font.setItalic(true);
+        font.setStrikeout(true);
+        font.setFontHeightInPoints((short) 13);
+        font.setUnderline(XSSFFont.U_DOUBLE);
+        font.setColor(new XSSFColor(Color.RED, null));
+        font.setTypeOffset(XSSFFont.SS_SUPER);
+        rts.applyFont(0, 13, font);
+        return rts;
+    }
+
+    private static SerializableComment roundTrip(SerializableComment comment) {
+        WriteBuffer buff = new WriteBuffer();
+        SerializableCommentDataType.INSTANCE.write(buff, comment);
+        ByteBuffer bb = buff.getBuffer();
+        bb.flip();
+        return SerializableCommentDataType.INSTANCE.read(bb);
+    }
 }
@@ -0,0 +1,42 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestSpillingSharedStringsStore {
+
+    @Test
+    public void testSpillByEntries() {
+        testSpill(5, Long.MAX_VALUE, SharedStringsStoreFactory.mvStore());
+        testSpill(5, Long.MAX_VALUE, SharedStringsStoreFactory.mappedLog());
+    }
+
+    @Test
+    public void testSpillByBytes() {
+        testSpill(Integer.MAX_VALUE, 200, SharedStringsStoreFactory.mvStore(true));
+    }
+
+    private void testSpill(int maxHeapEntries, long maxHeapBytes, SharedStringsStoreFactory diskStoreFactory) {
+        try (SpillingSharedStringsStore store = new SpillingSharedStringsStore(maxHeapEntries, maxHeapBytes,
+                diskStoreFactory, false, TempFileSharedStringsTable::getKey)) {
+            int idx = 0;
+            while (!store.isSpilled()) {
+                assertTrue("store should have spilled", idx < 100);
+                String text = "value" + idx;
+                store.add(TempFileSharedStringsTable.getKey(text), text, idx);
+                store.put(idx, text);
+                idx++;
+            }
+            for (int i = 0; i < idx; i++) {
+                String text = "value" + i;
+                assertEquals(text, store.get(i));
+                assertEquals(i, store.find(TempFileSharedStringsTable.getKey(text), text));
+            }
+            store.add(TempFileSharedStringsTable.getKey("after"), "after", idx);
+            store.put(idx, "after");
+            assertEquals("after", store.get(idx));
+            assertEquals(-1, store.find(TempFileSharedStringsTable.getKey("missing"), "missing"));
+        }
+    }
+}
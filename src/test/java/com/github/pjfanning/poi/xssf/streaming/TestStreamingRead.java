@@ -2,13 +2,21 @@ package com.github.pjfanning.poi.xssf.streaming;
 
 import org.apache.poi.ooxml.util.PackageHelper;
 import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.CreationHelper;
 import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.util.XMLHelper;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
 import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.Comments;
 import org.apache.poi.xssf.model.SharedStrings;
 import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Assert;
 import org.junit.Test;
 import org.xml.sax.ContentHandler;
@@ -17,10 +25,17 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestStreamingRead {
 
@@ -46,6 +61,165 @@ public class TestStreamingRead {
         }
     }
 
+    @Test
+    public void testParallelSheetReader() throws Exception {
+        try (InputStream is = getResourceStream("sample.xlsx");
+             OPCPackage pkg = PackageHelper.open(is)) {
+            Map<Integer, BasicSheetContentsHandler> handlers = new ConcurrentHashMap<>();
+            List<String> completed = new ArrayList<>();
+            new ParallelSheetReader(pkg)
+                    .encryptTempFiles(true)
+                    .onSheetComplete(sheet -> completed.add(sheet.getName()))
+                    .read(sheet -> {
+                        BasicSheetContentsHandler handler = new BasicSheetContentsHandler();
+                        handler.println(sheet + ":");
+                        handlers.put(sheet.getIndex(), handler);
+                        return handler;
+                    });
+            Assert.assertEquals(Collections.singletonList("Sheet1"), completed);
+            Assert.assertEquals(getExpected(), handlers.get(0).getExtract());
+        }
+    }
+
+    @Test
+    public void testParallelSheetReaderMultipleSheets() throws Exception {
+        int sheetCount = 6;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            CreationHelper factory = wb.getCreationHelper();
+            for (int s = 0; s < sheetCount; s++) {
+                XSSFSheet sheet = wb.createSheet("Sheet" + s);
+                Drawing<?> drawing = sheet.createDrawingPatriarch();
+                for (int r = 0; r < 200; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("shared" + (r % 17));
+                    row.createCell(1).setCellValue("sheet" + s + "-row" + r);
+                    row.createCell(2).setCellValue(r * s);
+                    if (r % 3 == 0 && r < 9) {
+                        ClientAnchor anchor = factory.createClientAnchor();
+                        anchor.setRow1(r);
+                        anchor.setCol1(0);
+                        Comment comment = drawing.createCellComment(anchor);
+                        comment.setString(factory.createRichTextString("comment " + s + "/" + r));
+                        row.getCell(0).setCellComment(comment);
+                    }
+                }
+            }
+            wb.write(bos);
+        }
+        try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(bos.toByteArray()))) {
+            String[] expected = new String[sheetCount];
+            try (TempFileSharedStringsTable strings = new TempFileSharedStringsTable(pkg, false)) {
+                XSSFReader xssfReader = new XSSFReader(pkg);
+                StylesTable styles = xssfReader.getStylesTable();
+                XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+                int index = 0;
+                while (iter.hasNext()) {
+                    try (InputStream stream = iter.next()) {
+                        // the expected output uses the POI comments table
+                        Comments comments = iter.getSheetComments();
+                        BasicSheetContentsHandler handler = new BasicSheetContentsHandler();
+                        XMLReader sheetParser = XMLHelper.newXMLReader();
+                        sheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                                styles, comments, strings, handler, new DataFormatter(), false));
+                        sheetParser.parse(new InputSource(stream));
+                        expected[index++] = handler.getExtract();
+                    }
+                }
+            }
+            Assert.assertTrue(expected[3].contains("A7 shared6 Comment=comment 3/6"));
+
+            for (boolean ordered : new boolean[] {true, false}) {
+                ExecutorService executor = Executors.newFixedThreadPool(3);
+                try {
+                    Map<Integer, BasicSheetContentsHandler> handlers = new ConcurrentHashMap<>();
+                    List<Integer> completed = new ArrayList<>();
+                    AtomicInteger inFlight = new AtomicInteger();
+                    AtomicInteger maxInFlight = new AtomicInteger();
+                    new ParallelSheetReader(pkg)
+                            .executor(executor)
+                            .orderedCompletion(ordered)
+                            .maxSheetsInFlight(2)
+                            .sharedStringsConfig(new SharedStringsConfig().cache(64, 1024 * 1024))
+                            .commentsStoreFactory(CommentsStoreFactory.inHeap())
+                            .onSheetComplete(sheet -> {
+                                inFlight.decrementAndGet();
+                                completed.add(sheet.getIndex());
+                            })
+                            .read(sheet -> {
+                                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                                BasicSheetContentsHandler handler = new BasicSheetContentsHandler();
+                                handlers.put(sheet.getIndex(), handler);
+                                return handler;
+                            });
+                    Assert.assertEquals(sheetCount, completed.size());
+                    Assert.assertTrue(maxInFlight.get() <= 2);
+                    if (ordered) {
+                        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), completed);
+                    } else {
+                        Assert.assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3, 4, 5)), new HashSet<>(completed));
+                    }
+                    for (int i = 0; i < sheetCount; i++) {
+                        Assert.assertEquals(expected[i], handlers.get(i).getExtract());
+                    }
+                } finally {
+                    executor.shutdown();
+                }
+            }
+
+            // the sheets after the failed one are skipped and no completion callback is called
+            for (boolean ordered : new boolean[] {true, false}) {
+                for (int maxSheetsInFlight : new int[] {1, sheetCount}) {
+                    ExecutorService executor = Executors.newSingleThreadExecutor();
+                    List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+                    List<Integer> completed = new ArrayList<>();
+                    try {
+                        new ParallelSheetReader(pkg)
+                                .executor(executor)
+                                .orderedCompletion(ordered)
+                                .maxSheetsInFlight(maxSheetsInFlight)
+                                .commentsStoreFactory(CommentsStoreFactory.inHeap())
+                                .onSheetComplete(sheet -> completed.add(sheet.getIndex()))
+                                .read(sheet -> {
+                                    started.add(sheet.getIndex());
+                                    return new BasicSheetContentsHandler() {
+                                        @Override
+                                        public void startRow(int rowNum) {
+                                            throw new IllegalStateException("test failure");
+                                        }
+                                    };
+                                });
+                        Assert.fail("expected IllegalStateException");
+                    } catch (IllegalStateException e) {
+                        Assert.assertEquals("test failure", e.getMessage());
+                    } finally {
+                        executor.shutdown();
+                    }
+                    Assert.assertEquals(Collections.singletonList(0), started);
+                    Assert.assertEquals(Collections.emptyList(), completed);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSheetReaderFailure() throws Exception {
+        try (InputStream is = getResourceStream("sample.xlsx");
+             OPCPackage pkg = PackageHelper.open(is)) {
+            try {
+                new ParallelSheetReader(pkg).read(sheet -> new BasicSheetContentsHandler() {
+                    @Override
+                    public void startRow(int rowNum) {
+                        throw new IllegalStateException("test failure");
+                    }
+                });
+                Assert.fail("expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("test failure", e.getMessage());
+            }
+        }
+    }
+
     private void processSheet(
             StylesTable styles,
             SharedStrings strings,
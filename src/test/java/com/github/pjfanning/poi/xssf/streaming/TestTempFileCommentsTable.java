@@ -31,6 +31,32 @@ public class TestTempFileCommentsTable {
         testReadXML(false, true);
     }
 
+    @Test
+    public void testReadXMLInHeapStore() throws Exception {
+        testReadXML(false, false, CommentsStoreFactory.inHeap());
+        testReadXML(false, true, CommentsStoreFactory.inHeap());
+    }
+
+    @Test
+    public void testReadXMLMVStoreConfig() throws Exception {
+        testReadXML(true, false, CommentsStoreFactory.mvStore(MVStoreConfig.lowMemory()));
+        testReadXML(false, true, CommentsStoreFactory.mvStore(MVStoreConfig.smallDisk()));
+        testReadXML(true, true, CommentsStoreFactory.mvStore(new MVStoreConfig().offHeap(true)));
+        testReadXML(true, false, CommentsStoreFactory.mvStore(
+                new MVStoreConfig().encryptionKey(TempFileEncryptionKey.generate())));
+    }
+
+    @Test
+    public void testReadXMLStorePool() throws Exception {
+        try (CommentsStorePool pool = new CommentsStorePool(CommentsStoreFactory.mvStore(), false, 2)) {
+            for (int i = 0; i < 5; i++) {
+                testReadXML(false, i % 2 == 0, pool);
+            }
+            // not pooled, as the encryption setting does not match
+            testReadXML(true, false, pool);
+        }
+    }
+
     @Test
     public void testWriteEmpty() throws Exception {
         try (
@@ -88,9 +114,13 @@ public class TestTempFileCommentsTable {
     }
 
     private void testReadXML(boolean encrypt, boolean fullFormat) throws Exception {
+        testReadXML(encrypt, fullFormat, CommentsStoreFactory.mvStore());
+    }
+
+    private void testReadXML(boolean encrypt, boolean fullFormat, CommentsStoreFactory storeFactory) throws Exception {
         try (
                 InputStream is = TestTempFileCommentsTable.class.getClassLoader().getResourceAsStream("comments1.xml");
-                TempFileCommentsTable ct = new TempFileCommentsTable(encrypt, fullFormat)
+                TempFileCommentsTable ct = new TempFileCommentsTable(encrypt, fullFormat, storeFactory)
         ) {
             ct.readFrom(is);
             assertEquals(3, ct.getNumberOfComments());
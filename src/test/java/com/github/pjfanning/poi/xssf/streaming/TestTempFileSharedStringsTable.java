@@ -2,7 +2,15 @@ package com.github.pjfanning.poi.xssf.streaming;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.UUID;
 
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
@@ -12,9 +20,16 @@ import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.junit.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTPhoneticRun;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRElt;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestTempFileSharedStringsTable {
     @Test
@@ -27,6 +42,90 @@ public class TestTempFileSharedStringsTable {
         testWriteOut(true);
     }
 
+    @Test
+    public void testWriteOutHashDedupIndex() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().hashDedupIndex(true));
+        testWriteOut(true, new SharedStringsConfig().hashDedupIndex(true));
+    }
+
+    @Test
+    public void testWriteOutMappedLogStore() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().mappedLogStore(true));
+        testWriteOut(true, new SharedStringsConfig().mappedLogStore(true));
+    }
+
+    @Test
+    public void testWriteOutInHeapStore() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().storeFactory(SharedStringsStoreFactory.inHeap()));
+        testWriteOut(true, new SharedStringsConfig().storeFactory(SharedStringsStoreFactory.inHeap()));
+    }
+
+    @Test
+    public void testWriteOutSpillToDisk() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().spillToDisk(2, Long.MAX_VALUE));
+        testWriteOut(true, new SharedStringsConfig().spillToDisk(2, Long.MAX_VALUE).mappedLogStore(true));
+    }
+
+    @Test
+    public void testWriteOutMVStoreConfig() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().mvStoreConfig(MVStoreConfig.lowMemory()));
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(MVStoreConfig.fastDisk()));
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(MVStoreConfig.smallDisk()).hashDedupIndex(true));
+        testWriteOut(false, new SharedStringsConfig().mvStoreConfig(new MVStoreConfig().compress().autoCommitDisabled()));
+    }
+
+    @Test
+    public void testWriteOutOffHeap() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().mvStoreConfig(new MVStoreConfig().offHeap(true)));
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(MVStoreConfig.lowMemory().offHeap(true))
+                .hashDedupIndex(true));
+    }
+
+    @Test
+    public void testWriteOutRawKeyEncryption() throws Exception {
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(new MVStoreConfig().rawKeyEncryption(true)));
+        MVStoreConfig sharedKeyConfig = new MVStoreConfig().encryptionKey(TempFileEncryptionKey.generate());
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(sharedKeyConfig).hashDedupIndex(true));
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(sharedKeyConfig));
+        testWriteOut(true, new SharedStringsConfig().mvStoreConfig(
+                MVStoreConfig.smallDisk().offHeap(true).rawKeyEncryption(true)));
+    }
+
+    @Test
+    public void testWriteOutStorePool() throws Exception {
+        try (SharedStringsStorePool pool = new SharedStringsStorePool(SharedStringsStoreFactory.mvStore(), true, 2)) {
+            SharedStringsConfig config = new SharedStringsConfig().storeFactory(pool);
+            for (int i = 0; i < 5; i++) {
+                testWriteOut(i % 2 == 0, config);
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pool.getIdleCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, pool.getIdleCount());
+        }
+        try (SharedStringsStorePool pool = new SharedStringsStorePool(SharedStringsStoreFactory.mappedLog(), true, 1)) {
+            for (int i = 0; i < 3; i++) {
+                testWriteOut(false, new SharedStringsConfig().storeFactory(pool).spillToDisk(2, Long.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    public void testRawKeyStoreIsNotReused() throws Exception {
+        MVStoreConfig mvStoreConfig = new MVStoreConfig().rawKeyEncryption(true);
+        SharedStringsStoreFactory storeFactory = SharedStringsStoreFactory.mvStore(false, mvStoreConfig);
+        try (SharedStringsStore store = storeFactory.create(true)) {
+            assertFalse(store.clear());
+        }
+        try (SharedStringsStore store = storeFactory.create(false)) {
+            assertTrue(store.clear());
+        }
+        try (CommentsStore store = CommentsStoreFactory.mvStore(mvStoreConfig).create(true)) {
+            assertFalse(store.clear());
+        }
+    }
+
     @Test
     public void testReadXML() throws Exception {
         testReadXML(false);
@@ -37,6 +136,12 @@ public class TestTempFileSharedStringsTable {
         testReadXML(true);
     }
 
+    @Test
+    public void testReadXMLMappedLogStore() throws Exception {
+        testReadXML(false, new SharedStringsConfig().mappedLogStore(true));
+        testReadXML(true, new SharedStringsConfig().mappedLogStore(true));
+    }
+
     @Test
     public void testReadStyledXML() throws Exception {
         testReadStyledXML(false);
@@ -128,8 +233,12 @@ public class TestTempFileSharedStringsTable {
     }
 
     private void testReadXML(boolean fullFormat) throws Exception {
+        testReadXML(fullFormat, new SharedStringsConfig());
+    }
+
+    private void testReadXML(boolean fullFormat, SharedStringsConfig config) throws Exception {
         try (InputStream is = TestTempFileSharedStringsTable.class.getClassLoader().getResourceAsStream("sharedStrings.xml");
-             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, fullFormat)) {
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, fullFormat, config)) {
             sst.readFrom(is);
             assertEquals(60, sst.getCount());
             assertEquals(38, sst.getUniqueCount());
@@ -138,7 +247,11 @@ public class TestTempFileSharedStringsTable {
     }
 
     private void testWriteOut(boolean fullFormat) throws Exception {
-        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, fullFormat)) {
+        testWriteOut(fullFormat, new SharedStringsConfig());
+    }
+
+    private void testWriteOut(boolean fullFormat, SharedStringsConfig config) throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, fullFormat, config)) {
             sst.addSharedStringItem(new XSSFRichTextString("First string"));
             sst.addSharedStringItem(new XSSFRichTextString("First string"));
             sst.addSharedStringItem(new XSSFRichTextString("First string"));
@@ -175,6 +288,655 @@ public class TestTempFileSharedStringsTable {
         }
     }
 
+    @Test
+    public void testPlainTextEntries() throws Exception {
+        String[] values = new String[]{"plain", " leading space", "a\tb\r\nc", "x&<>\"'", "]]>", "", "_x000D_"};
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false)) {
+            for (String value : values) {
+                sst.addSharedStringItem(new XSSFRichTextString(value));
+            }
+            try (UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+                 UnsynchronizedByteArrayOutputStream expected = new UnsynchronizedByteArrayOutputStream();
+                 SharedStringsTable poiSst = new SharedStringsTable()) {
+                sst.writeTo(bos);
+                for (String value : values) {
+                    poiSst.addSharedStringItem(new XSSFRichTextString(value));
+                }
+                poiSst.writeTo(expected);
+                try (TempFileSharedStringsTable sst2 = new TempFileSharedStringsTable(false);
+                     SharedStringsTable sst3 = new SharedStringsTable()) {
+                    sst2.readFrom(bos.toInputStream());
+                    sst3.readFrom(expected.toInputStream());
+                    assertEquals(values.length, sst2.getUniqueCount());
+                    for (int i = 0; i < values.length; i++) {
+                        assertEquals(sst3.getItemAt(i).getString(), sst2.getItemAt(i).getString());
+                        assertEquals(sst3.getItemAt(i).getString(), sst2.getStringAt(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadXMLPipelinedLoading() throws Exception {
+        testReadXML(false, new SharedStringsConfig().pipelinedLoading(true));
+        testReadXML(true, new SharedStringsConfig().pipelinedLoading(true).hashDedupIndex(true));
+        testReadXML(false, new SharedStringsConfig().pipelinedLoading(true).mappedLogStore(true));
+    }
+
+    @Test
+    public void testPipelinedLoadingKeepsOrder() throws Exception {
+        int size = LoadPipeline.BATCH_SIZE * 3 + 17;
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false);
+             UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream()) {
+            for (int i = 0; i < size; i++) {
+                sst.addSharedStringItem(new XSSFRichTextString("value" + i));
+            }
+            sst.writeTo(bos);
+            SharedStringsConfig config = new SharedStringsConfig().pipelinedLoading(true).spillToDisk(100, Long.MAX_VALUE);
+            try (TempFileSharedStringsTable sst2 = new TempFileSharedStringsTable(false, false, config)) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(size, sst2.getUniqueCount());
+                assertEquals(size, sst2.getCount());
+                for (int i = 0; i < size; i++) {
+                    assertEquals("value" + i, sst2.getStringAt(i));
+                }
+                assertEquals(size, sst2.addSharedStringItem(new XSSFRichTextString("new value")));
+                assertEquals(5, sst2.addSharedStringItem(new XSSFRichTextString("value5")));
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineCloseDoesNotInterruptWriter() throws Exception {
+        List<Integer> written = new ArrayList<>();
+        boolean[] interrupted = new boolean[1];
+        LoadPipeline pipeline = new LoadPipeline("test-loader", batch -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+            written.add(batch.length);
+        });
+        for (int i = 0; i < LoadPipeline.BATCH_SIZE * 3; i++) {
+            pipeline.add("value" + i);
+        }
+        // parsing failed, so the queued batches are dropped and the batch that is being written completes
+        pipeline.close();
+        assertFalse(interrupted[0]);
+        assertTrue(written.size() <= 1);
+    }
+
+    @Test
+    public void testRunsWithoutText() throws Exception {
+        CTRst st = CTRst.Factory.newInstance();
+        st.addNewR().setT("with text");
+        CTRElt run = st.addNewR();
+        run.addNewRPr().addNewB();
+        CTPhoneticRun phoneticRun = st.addNewRPh();
+        phoneticRun.setSb(0);
+        phoneticRun.setEb(1);
+        for (SharedStringsConfig config : new SharedStringsConfig[]{
+                new SharedStringsConfig(), new SharedStringsConfig().mappedLogStore(true)}) {
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, true, config)) {
+                assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString(st)));
+                CTRst read = ((XSSFRichTextString) sst.getItemAt(0)).getCTRst();
+                assertEquals(st.xmlText(), read.xmlText());
+                assertNull(read.getRArray(1).getT());
+                assertNull(read.getRPhArray(0).getT());
+            }
+        }
+    }
+
+    @Test
+    public void testAddSharedStringItems() throws Exception {
+        testAddSharedStringItems(new SharedStringsConfig());
+        testAddSharedStringItems(new SharedStringsConfig().hashDedupIndex(true));
+        testAddSharedStringItems(new SharedStringsConfig().mappedLogStore(true));
+        testAddSharedStringItems(new SharedStringsConfig().bloomFilter(100, 0.01));
+        testAddSharedStringItems(new SharedStringsConfig().dedupPolicy(DedupPolicy.NONE));
+        testAddSharedStringItems(new SharedStringsConfig().dedupPolicy(DedupPolicy.BOUNDED).dedupWorkingSetSize(500));
+    }
+
+    private void testAddSharedStringItems(SharedStringsConfig config) throws Exception {
+        XSSFFont font = new XSSFFont();
+        font.setBold(true);
+        List<XSSFRichTextString> items = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            XSSFRichTextString rts = new XSSFRichTextString("value" + (i % 3000));
+            if (i % 7 == 0) {
+                rts.applyFont(font);
+            }
+            items.add(rts);
+        }
+        try (TempFileSharedStringsTable expected = new TempFileSharedStringsTable(false, false, config);
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, config)) {
+            expected.addSharedStringItem(new XSSFRichTextString("value10"));
+            sst.addSharedStringItem(new XSSFRichTextString("value10"));
+            int[] expectedIndexes = new int[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                expectedIndexes[i] = expected.addSharedStringItem(items.get(i));
+            }
+            int[] indexes = sst.addSharedStringItems(items);
+            assertArrayEquals(expectedIndexes, indexes);
+            assertEquals(expected.getUniqueCount(), sst.getUniqueCount());
+            assertEquals(expected.getCount(), sst.getCount());
+            for (int i = 0; i < sst.getUniqueCount(); i++) {
+                assertEquals(expected.getStringAt(i), sst.getStringAt(i));
+            }
+            if (config.getDedupPolicy() == DedupPolicy.FULL) {
+                assertArrayEquals(Arrays.copyOf(expectedIndexes, 5), sst.addSharedStringItems(items.stream().limit(5)));
+            }
+        }
+    }
+
+    @Test
+    public void testAddPlainSharedStringItem() throws Exception {
+        try (TempFileSharedStringsTable expected = new TempFileSharedStringsTable(false, true);
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, true)) {
+            for (int i = 0; i < 1000; i++) {
+                String text = i % 10 == 0 ? " value " + (i % 300) + " " : "value" + (i % 300);
+                assertEquals(expected.addSharedStringItem(new XSSFRichTextString(text)), sst.addSharedStringItem(text));
+            }
+            XSSFRichTextString rts = new XSSFRichTextString("value1");
+            XSSFFont font = new XSSFFont();
+            font.setBold(true);
+            rts.applyFont(font);
+            assertEquals(expected.addSharedStringItem(rts), sst.addSharedStringItem(rts));
+            assertEquals(1, sst.addSharedStringItem("value1"));
+            assertEquals(expected.getUniqueCount(), sst.getUniqueCount());
+            assertEquals(expected.getCount() + 1, sst.getCount());
+            UnsynchronizedByteArrayOutputStream expectedXml = new UnsynchronizedByteArrayOutputStream();
+            UnsynchronizedByteArrayOutputStream xml = new UnsynchronizedByteArrayOutputStream();
+            expected.addSharedStringItem(new XSSFRichTextString("value1"));
+            expected.writeTo(expectedXml);
+            sst.writeTo(xml);
+            assertEquals(expectedXml.toString(StandardCharsets.UTF_8), xml.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testWriteOutBloomFilter() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().bloomFilter(1, 0.01));
+        testWriteOut(true, new SharedStringsConfig().bloomFilter(1000, 0.001).mappedLogStore(true));
+        testWriteOut(true, new SharedStringsConfig().bloomFilter(10, 0.01).spillToDisk(2, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        SharedStringsConfig config = new SharedStringsConfig().bloomFilter(1000, 0.01).hashDedupIndex(true);
+        try (TempFileSharedStringsTable expected = new TempFileSharedStringsTable(false, true);
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, true, config)) {
+            for (int i = 0; i < 20000; i++) {
+                String text = i % 5 == 0 ? "value" + (i % 100) : "unique" + i;
+                assertEquals(expected.addSharedStringItem(text), sst.addSharedStringItem(text));
+            }
+            assertEquals(expected.getUniqueCount(), sst.getUniqueCount());
+            assertEquals(expected.getCount(), sst.getCount());
+            assertTrue(sst.getBloomFilterSkippedLookups() > 15000);
+            assertTrue(sst.getBloomFilterFalsePositiveRate() < 0.01);
+            assertEquals(0, expected.getBloomFilterSkippedLookups());
+            assertEquals(0.0, expected.getBloomFilterFalsePositiveRate(), 0.0);
+            for (int i = 0; i < expected.getUniqueCount(); i++) {
+                assertEquals(expected.getItemAt(i).getString(), sst.getItemAt(i).getString());
+            }
+        }
+    }
+
+    @Test
+    public void testBloomFilterConfig() {
+        SharedStringsConfig config = new SharedStringsConfig();
+        assertEquals(0, config.getBloomFilterExpectedEntries());
+        for (double rate : new double[] {0, 1, Double.NaN}) {
+            try {
+                config.bloomFilter(100, rate);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        config.bloomFilter(100, 0.05);
+        assertEquals(100, config.getBloomFilterExpectedEntries());
+        assertEquals(0.05, config.getBloomFilterFalsePositiveRate(), 0.0);
+    }
+
+    @Test
+    public void testWriteOutBoundedDedup() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().dedupPolicy(DedupPolicy.BOUNDED));
+        testWriteOut(true, new SharedStringsConfig().dedupPolicy(DedupPolicy.BOUNDED).dedupWorkingSetSize(2)
+                .mappedLogStore(true));
+    }
+
+    @Test
+    public void testDedupPolicyNone() throws Exception {
+        SharedStringsConfig config = new SharedStringsConfig().dedupPolicy(DedupPolicy.NONE).spillToDisk(5, Long.MAX_VALUE);
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, config)) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, sst.addSharedStringItem("value" + (i % 4)));
+            }
+            assertEquals(20, sst.getUniqueCount());
+            assertEquals(20, sst.getCount());
+            try (UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream()) {
+                sst.writeTo(bos);
+                try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                    sst2.readFrom(bos.toInputStream());
+                    assertEquals(20, sst2.getUniqueCount());
+                    for (int i = 0; i < 20; i++) {
+                        assertEquals("value" + (i % 4), sst2.getItemAt(i).getString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDedupPolicyBounded() throws Exception {
+        SharedStringsConfig config = new SharedStringsConfig().dedupPolicy(DedupPolicy.BOUNDED).dedupWorkingSetSize(10);
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, config)) {
+            assertEquals(DedupPolicy.BOUNDED, sst.getDedupPolicy());
+            int frequentIdx = sst.addSharedStringItem("frequent");
+            for (int i = 0; i < 100; i++) {
+                // strings that repeat close together are shared
+                int idx = sst.addSharedStringItem("recent" + i);
+                assertEquals(idx, sst.addSharedStringItem("recent" + i));
+                // strings that are used often stay in the working set
+                assertEquals(frequentIdx, sst.addSharedStringItem("frequent"));
+            }
+            assertEquals(101, sst.getUniqueCount());
+            // strings that dropped out of the working set get a new entry
+            assertEquals(101, sst.addSharedStringItem("recent0"));
+            assertEquals("recent0", sst.getStringAt(1));
+            assertEquals("recent0", sst.getStringAt(101));
+        }
+    }
+
+    @Test
+    public void testDedupPolicyConfig() {
+        SharedStringsConfig config = new SharedStringsConfig();
+        assertEquals(DedupPolicy.FULL, config.getDedupPolicy());
+        try {
+            config.dedupPolicy(null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            config.dedupWorkingSetSize(0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(100, config.dedupWorkingSetSize(100).getDedupWorkingSetSize());
+    }
+
+    @Test
+    public void testCacheAndSpillConfig() {
+        SharedStringsConfig config = new SharedStringsConfig();
+        try {
+            config.cache(100, 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            config.spillToDisk(100, 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // maxBytes is not used when the cache or the in-heap stage is disabled
+        assertEquals(0, config.cache(0, 0).getCacheMaxEntries());
+        assertEquals(0, config.spillToDisk(0, 0).getSpillMaxHeapEntries());
+    }
+
+    @Test
+    public void testWriteOutParallel() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().parallelWrite(true).parallelWriteChunks(1, 2));
+        testWriteOut(true, new SharedStringsConfig().parallelWrite(true).parallelWriteChunks(2, 1)
+                .mappedLogStore(true));
+    }
+
+    @Test
+    public void testParallelWriteMatchesSerialWrite() throws Exception {
+        XSSFFont font = new XSSFFont();
+        font.setBold(true);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (TempFileSharedStringsTable serial = new TempFileSharedStringsTable(false, true);
+             TempFileSharedStringsTable parallel = new TempFileSharedStringsTable(false, true,
+                     new SharedStringsConfig().parallelWrite(true).parallelWriteExecutor(executor)
+                             .parallelWriteChunks(100, 4))) {
+            for (int i = 0; i < 2500; i++) {
+                XSSFRichTextString rts = new XSSFRichTextString("value <" + i + "> & more");
+                if (i % 3 == 0) {
+                    rts.applyFont(1, 4, font);
+                }
+                serial.addSharedStringItem(rts);
+                parallel.addSharedStringItem(rts);
+            }
+            UnsynchronizedByteArrayOutputStream expected = new UnsynchronizedByteArrayOutputStream();
+            serial.writeTo(expected);
+            UnsynchronizedByteArrayOutputStream actual = new UnsynchronizedByteArrayOutputStream();
+            parallel.writeTo(actual);
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            // a frozen table also reads the entries on the executor
+            parallel.freeze();
+            actual = new UnsynchronizedByteArrayOutputStream();
+            parallel.writeTo(actual);
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelWriteFailure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SharedStringsConfig config = new SharedStringsConfig().parallelWrite(true).parallelWriteExecutor(executor)
+                .parallelWriteChunks(10, 2);
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, config)) {
+            for (int i = 0; i < 100; i++) {
+                sst.addSharedStringItem("value" + i);
+            }
+            OutputStream failing = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("write failed");
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    throw new IOException("write failed");
+                }
+            };
+            try {
+                sst.writeTo(failing);
+                fail("expected IOException");
+            } catch (IOException e) {
+                assertEquals("write failed", e.getMessage());
+            }
+            UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream();
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(100, sst2.getUniqueCount());
+                assertEquals("value99", sst2.getItemAt(99).getString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWriteOutPreSerializedEntries() throws Exception {
+        testWriteOut(false, new SharedStringsConfig().preSerializeEntries(true));
+        testWriteOut(true, new SharedStringsConfig().preSerializeEntries(true));
+    }
+
+    @Test
+    public void testPreSerializedEntriesMatchXMLBeans() throws Exception {
+        XSSFFont font = new XSSFFont();
+        font.setBold(true);
+        List<XSSFRichTextString> items = new ArrayList<>();
+        for (String value : new String[]{"plain", " leading space", "a\tb\r\nc", "x&<>\"'", "", "_x000D_"}) {
+            items.add(new XSSFRichTextString(value));
+            XSSFRichTextString rts = new XSSFRichTextString(value + "rich");
+            rts.applyFont(0, 1, font);
+            items.add(rts);
+        }
+        for (boolean encrypt : new boolean[]{false, true}) {
+            SharedStringsConfig config = new SharedStringsConfig().preSerializeEntries(true);
+            try (TempFileSharedStringsTable expected = new TempFileSharedStringsTable(false);
+                 TempFileSharedStringsTable sst = new TempFileSharedStringsTable(encrypt, true, config);
+                 UnsynchronizedByteArrayOutputStream expectedBos = new UnsynchronizedByteArrayOutputStream();
+                 UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream()) {
+                for (XSSFRichTextString item : items) {
+                    expected.addSharedStringItem(item);
+                    sst.addSharedStringItem(item);
+                }
+                sst.addSharedStringItems(items);
+                sst.addSharedStringItems(Arrays.asList(new XSSFRichTextString("bulk"), new XSSFRichTextString("plain")));
+                for (XSSFRichTextString item : items) {
+                    expected.addSharedStringItem(item);
+                }
+                expected.addSharedStringItem(new XSSFRichTextString("bulk"));
+                expected.addSharedStringItem(new XSSFRichTextString("plain"));
+                expected.writeTo(expectedBos);
+                sst.writeTo(bos);
+                assertEquals(expectedBos.toString(StandardCharsets.UTF_8), bos.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testPreSerializedEntriesCopy() throws Exception {
+        testPreSerializedEntriesCopy(false);
+        testPreSerializedEntriesCopy(true);
+    }
+
+    private void testPreSerializedEntriesCopy(boolean encrypt) throws Exception {
+        List<XSSFRichTextString> items = new ArrayList<>();
+        // enough entries to need more than one block
+        for (int i = 0; i < 100000; i++) {
+            items.add(new XSSFRichTextString("value number " + i));
+        }
+        File expectedFile = TempFile.createTempFile("sst-expected", ".xml");
+        File file = TempFile.createTempFile("sst", ".xml");
+        try (TempFileSharedStringsTable expected = new TempFileSharedStringsTable(false);
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(encrypt, false,
+                     new SharedStringsConfig().preSerializeEntries(true))) {
+            expected.addSharedStringItems(items);
+            sst.addSharedStringItems(items);
+            try (FileOutputStream out = new FileOutputStream(expectedFile)) {
+                expected.writeTo(out);
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                sst.writeTo(out);
+            }
+            assertArrayEquals(Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(file.toPath()));
+            try (UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream()) {
+                sst.writeTo(bos);
+                assertArrayEquals(Files.readAllBytes(expectedFile.toPath()), bos.toByteArray());
+            }
+        } finally {
+            expectedFile.delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFrozenConcurrentReads() throws Exception {
+        testFrozenConcurrentReads(false, new SharedStringsConfig());
+        testFrozenConcurrentReads(true, new SharedStringsConfig().cache(100, 1024 * 1024));
+        testFrozenConcurrentReads(true, new SharedStringsConfig().mappedLogStore(true).cache(100, 1024 * 1024));
+        testFrozenConcurrentReads(false, new SharedStringsConfig().storeFactory(SharedStringsStoreFactory.inHeap()));
+        testFrozenConcurrentReads(true, new SharedStringsConfig().lazyLoading(true).cache(100, 1024 * 1024));
+    }
+
+    private void testFrozenConcurrentReads(boolean encrypt, SharedStringsConfig config) throws Exception {
+        final int size = 5000;
+        XSSFFont font = new XSSFFont();
+        font.setBold(true);
+        try (TempFileSharedStringsTable source = new TempFileSharedStringsTable(false, true);
+             UnsynchronizedByteArrayOutputStream bos = new UnsynchronizedByteArrayOutputStream()) {
+            for (int i = 0; i < size; i++) {
+                XSSFRichTextString rts = new XSSFRichTextString("value" + i);
+                if (i % 10 == 0) {
+                    rts.applyFont(0, 2, font);
+                }
+                source.addSharedStringItem(rts);
+            }
+            source.writeTo(bos);
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(encrypt, true, config)) {
+                sst.readFrom(bos.toInputStream());
+                sst.freeze();
+                assertTrue(sst.isFrozen());
+                int threads = 8;
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        final long seed = t;
+                        futures.add(executor.submit(() -> {
+                            Random rnd = new Random(seed);
+                            for (int i = 0; i < 20000; i++) {
+                                // mostly a small set of hot entries, like the cells of a real sheet
+                                int idx = rnd.nextInt(4) == 0 ? rnd.nextInt(size) : rnd.nextInt(50);
+                                assertEquals("value" + idx, sst.getStringAt(idx));
+                                XSSFRichTextString rts = (XSSFRichTextString) sst.getItemAt(idx);
+                                assertEquals(idx % 10 == 0 ? 2 : 0, rts.numFormattingRuns());
+                            }
+                            return null;
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } finally {
+                    executor.shutdown();
+                }
+                assertEquals(size, sst.getUniqueCount());
+                try {
+                    sst.addSharedStringItem(new XSSFRichTextString("new"));
+                    fail("frozen table should not accept new entries");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+                if (config.getCacheMaxEntries() > 0) {
+                    assertTrue(sst.getCacheHits() > 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadMixedContent() throws Exception {
+        testReadMixedContent(false, new SharedStringsConfig());
+    }
+
+    @Test
+    public void testReadMixedContentWithFullFormat() throws Exception {
+        testReadMixedContent(true, new SharedStringsConfig());
+    }
+
+    @Test
+    public void testReadMixedContentLazyLoading() throws Exception {
+        testReadMixedContent(false, new SharedStringsConfig().lazyLoading(true));
+        testReadMixedContent(true, new SharedStringsConfig().lazyLoading(true));
+    }
+
+    @Test
+    public void testReadXMLLazyLoading() throws Exception {
+        testReadXML(false, new SharedStringsConfig().lazyLoading(true));
+        testReadXML(true, new SharedStringsConfig().lazyLoading(true).cache(10, 10000));
+    }
+
+    @Test
+    public void testLazyLoadingWithPrefixes() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<!-- a comment with <si> in it -->" +
+                "<x:sst xmlns:x=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"\n count='3'>" +
+                "<x:si><x:t>first &gt; second</x:t></x:si><x:si/>" +
+                "<x:si><x:r><x:t><![CDATA[</x:si>]]></x:t></x:r></x:si></x:sst>";
+        for (boolean encrypt : new boolean[]{false, true}) {
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(encrypt, false,
+                    new SharedStringsConfig().lazyLoading(true))) {
+                sst.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+                assertEquals(3, sst.getUniqueCount());
+                assertEquals(3, sst.getCount());
+                assertEquals("</x:si>", sst.getStringAt(2));
+                assertEquals("first > second", sst.getStringAt(0));
+                assertEquals("", sst.getStringAt(1));
+                // changing the table moves the entries into the store
+                assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("first > second")));
+                assertEquals(3, sst.addSharedStringItem(new XSSFRichTextString("new")));
+                assertEquals(4, sst.getUniqueCount());
+                assertEquals(5, sst.getCount());
+                assertEquals("</x:si>", sst.getStringAt(2));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyLoadingOtherEncodings() throws Exception {
+        String body = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"2\">" +
+                "<si><t>caf\u00e9</t></si><si><t>plain</t></si></sst>";
+        byte[][] parts = {
+                ("<?xml version=\"1.0\" encoding=\"UTF-16\"?>" + body).getBytes(StandardCharsets.UTF_16),
+                ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + body).getBytes(StandardCharsets.ISO_8859_1)
+        };
+        for (byte[] part : parts) {
+            // the part is parsed eagerly instead of failing or returning garbage
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false,
+                    new SharedStringsConfig().lazyLoading(true))) {
+                sst.readFrom(new ByteArrayInputStream(part));
+                assertEquals(2, sst.getUniqueCount());
+                assertEquals("caf\u00e9", sst.getStringAt(0));
+                assertEquals("plain", sst.getStringAt(1));
+            }
+            try {
+                new LazySstIndex(new ByteArrayInputStream(part), false).close();
+                fail("expected IOException");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        byte[] utf8 = ("\ufeff<?xml version='1.0' encoding='utf-8'?>" + body).getBytes(StandardCharsets.UTF_8);
+        assertTrue(LazySstIndex.isUtf8(new BufferedInputStream(new ByteArrayInputStream(utf8))));
+    }
+
+    private void testReadMixedContent(boolean fullFormat, SharedStringsConfig config) throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"6\" uniqueCount=\"5\">\n" +
+                "  <si><t>plain &amp; simple</t></si>\n" +
+                "  <si><t xml:space=\"preserve\"> a<!-- comment --><![CDATA[<b>]]>c </t></si>\n" +
+                "  <si><r><rPr><b/><sz val=\"11\"/><color rgb=\"FFFF0000\"/><rFont val=\"Calibri\"/></rPr><t>bold</t></r>" +
+                "<r><t xml:space=\"preserve\"> normal</t></r></si>\n" +
+                "  <si><t>\u6f22\u5b57</t><rPh sb=\"0\" eb=\"2\"><t>\u304b\u3093\u3058</t></rPh>" +
+                "<phoneticPr fontId=\"1\" type=\"noConversion\"/></si>\n" +
+                "  <si><t/></si>\n" +
+                "</sst>";
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, fullFormat, config);
+             SharedStringsTable poiSst = new SharedStringsTable()) {
+            sst.readFrom(new ByteArrayInputStream(bytes));
+            poiSst.readFrom(new ByteArrayInputStream(bytes));
+            assertEquals(5, sst.getUniqueCount());
+            assertEquals(6, sst.getCount());
+            for (int i = 0; i < 5; i++) {
+                XSSFRichTextString expected = (XSSFRichTextString) poiSst.getItemAt(i);
+                XSSFRichTextString actual = (XSSFRichTextString) sst.getItemAt(i);
+                assertEquals(expected.getString(), actual.getString());
+                // XML comments are not kept in the parsed text
+                if (fullFormat && i != 1) {
+                    assertEquals(expected.getCTRst().xmlText(Constants.saveOptions), actual.getCTRst().xmlText(Constants.saveOptions));
+                    assertEquals(expected.numFormattingRuns(), actual.numFormattingRuns());
+                }
+            }
+            assertEquals(" a<b>c ", sst.getStringAt(1));
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        SharedStringsConfig config = new SharedStringsConfig().cache(2, 1024 * 1024);
+        try (InputStream is = TestTempFileSharedStringsTable.class.getClassLoader().getResourceAsStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, config)) {
+            sst.readFrom(is);
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals(1, sst.getCacheHits());
+            assertEquals(1, sst.getCacheMisses());
+            for (int i = 1; i < sst.getUniqueCount(); i++) {
+                sst.getItemAt(i);
+            }
+            // entry 0 was read twice so it survives the scan of the other entries
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals(2, sst.getCacheHits());
+            assertEquals(sst.getUniqueCount(), sst.getCacheMisses());
+        }
+    }
+
     @Test
     public void stressTest() throws Exception {
         final int limit = 100;
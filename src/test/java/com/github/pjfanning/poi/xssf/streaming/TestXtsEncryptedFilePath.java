@@ -0,0 +1,83 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+import org.h2.store.fs.FilePath;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestXtsEncryptedFilePath {
+
+    @Test
+    public void testRewriteSameOffset() throws Exception {
+        File file = TempFile.createTempFile("poi-xts-test", ".tmp");
+        String fileName = XtsEncryptedFilePath.register(file.getAbsolutePath(),
+                TempFileEncryptionKey.generate().getKey());
+        try {
+            Random random = new Random(42);
+            byte[] plain1 = new byte[8192];
+            byte[] plain2 = new byte[8192];
+            random.nextBytes(plain1);
+            random.nextBytes(plain2);
+
+            byte[] cipher1;
+            byte[] cipher2;
+            try (FileChannel channel = FilePath.get(fileName).open("rw")) {
+                channel.write(ByteBuffer.wrap(plain1), 0);
+                cipher1 = Files.readAllBytes(file.toPath());
+                channel.write(ByteBuffer.wrap(plain2), 0);
+                cipher2 = Files.readAllBytes(file.toPath());
+
+                ByteBuffer read = ByteBuffer.allocate(plain2.length);
+                assertEquals(plain2.length, channel.read(read, 0));
+                assertArrayEquals(plain2, read.array());
+            }
+            assertEquals(plain1.length, cipher1.length);
+            assertFalse(Arrays.equals(plain1, cipher1));
+            // with a key stream, the ciphertexts would XOR to the XOR of the plaintexts
+            assertFalse(Arrays.equals(xor(plain1, plain2), xor(cipher1, cipher2)));
+        } finally {
+            XtsEncryptedFilePath.unregister(fileName);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnalignedReadAndWrite() throws Exception {
+        File file = TempFile.createTempFile("poi-xts-test", ".tmp");
+        String fileName = XtsEncryptedFilePath.register(file.getAbsolutePath(),
+                TempFileEncryptionKey.generate().getKey());
+        try {
+            byte[] expected = new byte[10000];
+            new Random(7).nextBytes(expected);
+            try (FileChannel channel = FilePath.get(fileName).open("rw")) {
+                channel.write(ByteBuffer.wrap(expected, 0, 5000), 0);
+                channel.write(ByteBuffer.wrap(expected, 5000, 5000), 5000);
+                // the file holds whole sectors
+                assertEquals(3 * 4096, channel.size());
+
+                ByteBuffer read = ByteBuffer.allocate(7000);
+                assertEquals(7000, channel.read(read, 3000));
+                assertArrayEquals(Arrays.copyOfRange(expected, 3000, 10000), read.array());
+            }
+        } finally {
+            XtsEncryptedFilePath.unregister(fileName);
+            file.delete();
+        }
+    }
+
+    private static byte[] xor(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) (a[i] ^ b[i]);
+        }
+        return result;
+    }
+}